@@ -22,26 +22,55 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.migration.exception.DataMigrationException;
 import org.wso2.migration.service.Migrator;
+import org.wso2.migration.util.DataMigrationConstants;
+import org.wso2.migration.util.MigrationJournal;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Implementation of Data migration client.
+ * <p/>
+ * The migrated units are recorded in a journal, at the path given with the -DmigrationJournal option, so that a
+ * migration which stopped halfway is resumed from where it stopped when it is run again.
  **/
 public class DataMigrationClientImpl implements DataMigrationClient {
     private static final Log log = LogFactory.getLog(DataMigrationClientImpl.class);
 
     @Override
     public void execute() throws DataMigrationException {
+        MigrationJournal journal = null;
         try {
+            journal = MigrationJournal.open(getJournalPath());
             MigrationHolder migrationHolder = MigrationHolder.getInstance();
             List<Migrator> migrators = migrationHolder.getMigrators();
             for (Migrator migrator : migrators) {
+                migrator.setJournal(journal);
                 migrator.migrate();
             }
+            journal.markCompleted();
             log.info("Migration was successful.");
         } catch (Exception e) {
-            log.error("Error occurred while migrating. Migration stopped. ", e);
+            log.error("Error occurred while migrating. Migration stopped. " + (journal == null ? "" :
+                    "The migrated units are recorded in '" + journal.getPath() + "', and will be skipped when the " +
+                            "migration is run again. "), e);
+        } finally {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close the migration journal : " + journal.getPath(), e);
+                }
+            }
+        }
+    }
+
+    private static String getJournalPath() {
+        String path = System.getProperty(DataMigrationConstants.MIGRATION_JOURNAL);
+        if (path == null || path.isEmpty()) {
+            path = System.getProperty(DataMigrationConstants.CARBON_HOME) +
+                    DataMigrationConstants.DEFAULT_MIGRATION_JOURNAL_PATH;
         }
+        return path;
     }
 }
@@ -20,29 +20,23 @@ package org.wso2.migration.service;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 import org.wso2.migration.exception.DataMigrationException;
 import org.wso2.migration.util.DataMigrationConstants;
-import org.wso2.migration.util.DataMigrationUtil;
+import org.wso2.migration.util.EncryptedPropertyRewriter;
+import org.wso2.migration.util.MigrationEngine;
+import org.wso2.migration.util.MigrationUnit;
+import org.wso2.migration.util.ReEncryptionService;
 
 import java.io.File;
-import java.util.Objects;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.wso2.carbon.base.MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
 
 
 /**
- * Migrate encrypted data in event publishers and event receivers
+ * Migrate encrypted data in event publishers and event receivers. The files of both directories are migrated in
+ * parallel on a {@link MigrationEngine}, each as a unit of its own.
  **/
 public class InputOutputDataMigration extends Migrator {
     private static final Log log = LogFactory.getLog(InputOutputDataMigration.class);
@@ -51,86 +45,47 @@ public class InputOutputDataMigration extends Migrator {
         return instance;
     }
 
+    @Override
+    protected String getName() {
+        return "Event publisher and receiver migration";
+    }
+
     @Override
     public void migrate() throws DataMigrationException {
         String carbonPath = System.getProperty(DataMigrationConstants.CARBON_HOME);
-        migratePublishers(carbonPath);
-        migrateReceivers(carbonPath);
+        EncryptedPropertyRewriter rewriter = new EncryptedPropertyRewriter(ReEncryptionService.getInstance());
+        List<MigrationUnit> units = new ArrayList<>();
+        addFiles(units, rewriter, readFiles(carbonPath + DataMigrationConstants.EVENT_PUBLISHER_PATH));
+        addFiles(units, rewriter, readFiles(carbonPath + DataMigrationConstants.EVENT_RECIEVER_PATH));
+        MigrationEngine.fromSystemProperties(getName(), getJournal()).run(units);
+        log.info("Migrating publishers and receivers was successful");
     }
 
     private static File readFiles(String path) {
         return new File(path);
     }
 
-    private static void migratePublishers(String carbonHome) throws DataMigrationException {
-        File publisherPath = readFiles(carbonHome + DataMigrationConstants.EVENT_PUBLISHER_PATH);
-        try {
-            migrateData(publisherPath);
-            log.info("Migrating publishers was successful");
-        } catch (DataMigrationException e) {
-            throw new DataMigrationException("Error while migrating publishers in path : ".
-                    concat(publisherPath.getName()), e);
-        }
-    }
-
-    private static void migrateReceivers(String carbonHome) throws DataMigrationException {
-        File recieverPath = readFiles(carbonHome + DataMigrationConstants.EVENT_RECIEVER_PATH);
-        try {
-            migrateData(recieverPath);
-            log.info("Migrating receivers was successful");
-        } catch (DataMigrationException e) {
-            throw new DataMigrationException("Error while migrating receivers in path : "
-                    .concat(recieverPath.getName()), e);
+    private static void addFiles(List<MigrationUnit> units, final EncryptedPropertyRewriter rewriter, File folder)
+            throws DataMigrationException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            throw new DataMigrationException("Error occurred while migrating data in folder : ".concat(
+                    folder.getAbsolutePath()).concat(" . Unable to list the files."));
         }
-    }
-
-    private static void migrateData(File folder) throws DataMigrationException {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        documentBuilderFactory.setNamespaceAware(true);
-        DocumentBuilder builder;
-        Document doc;
-        try {
-            for (File fileEntry : Objects.requireNonNull(folder.listFiles())) {
-                builder = documentBuilderFactory.newDocumentBuilder();
-                if (!fileEntry.getName().endsWith(".xml")) {
-                    log.error("File type is not supported. file : '".
-                            concat(fileEntry.getName()).concat("'. Hence ignored"));
-                }
-                doc = builder.parse(fileEntry);
-                XPathFactory xpathFactory = XPathFactory.newInstance();
-                XPath xpath = xpathFactory.newXPath();
-                NodeList data = getEncryptedPayload(doc, xpath);
-                if (data.getLength() > 0) {
-                    for (int i = 0; i < data.getLength(); i++) {
-                        if (!DataMigrationUtil.isNewlyEncrypted(data.item(i).getNodeValue())) {
-                            String reEncryptedValue = DataMigrationUtil.reEncryptByNewAlgorithm(data.item(i).
-                                    getNodeValue());
-                            data.item(i).setNodeValue(reEncryptedValue);
-                        }
+        for (final File fileEntry : files) {
+            if (!fileEntry.getName().endsWith(".xml")) {
+                log.error("File type is not supported. file : '".
+                        concat(fileEntry.getName()).concat("'. Hence ignored"));
+                continue;
+            }
+            units.add(new MigrationUnit(SUPER_TENANT_DOMAIN_NAME, fileEntry.getAbsolutePath()) {
+                @Override
+                public void migrate() throws DataMigrationException {
+                    if (rewriter.rewrite(fileEntry) && log.isDebugEnabled()) {
+                        log.debug("Migrated encrypted properties in file : " + fileEntry.getAbsolutePath());
                     }
-
-                    Transformer xformer = TransformerFactory.newInstance().newTransformer();
-                    xformer.transform(new DOMSource(doc), new StreamResult(new File(
-                            fileEntry.getAbsolutePath()).getPath()));
                 }
-            }
-
-        } catch (Exception e) {
-            throw new DataMigrationException("Error occurred while migrating data in folder : ".concat(
-                    folder.getAbsolutePath()).concat(" . "), e);
+            });
         }
-
-    }
-
-    private static NodeList getEncryptedPayload(Document doc, XPath xpath) throws DataMigrationException {
-        try {
-            XPathExpression expr = xpath.compile(
-                    "//*[local-name()='property'][@*[local-name()='encrypted'='true']]/text()");
-            return (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-        } catch (XPathExpressionException e) {
-            throw new DataMigrationException("Error has occurred while retriving the payload from file : ".concat(
-                    doc.getDocumentURI()), e);
-        }
-
     }
 }
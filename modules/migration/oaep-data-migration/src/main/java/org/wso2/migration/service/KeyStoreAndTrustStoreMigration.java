@@ -22,7 +22,6 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.core.util.CryptoException;
 import org.wso2.carbon.registry.core.Collection;
 import org.wso2.carbon.registry.core.Registry;
@@ -30,113 +29,102 @@ import org.wso2.carbon.registry.core.Resource;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.user.api.Tenant;
-import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.migration.exception.DataMigrationException;
 import org.wso2.migration.internal.MigrationServiceDataHolder;
-import org.wso2.migration.util.DataMigrationUtil;
+import org.wso2.migration.util.BatchedRegistryWriter;
+import org.wso2.migration.util.ReEncryptionService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
-import static org.wso2.carbon.base.MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
-import static org.wso2.carbon.base.MultitenantConstants.SUPER_TENANT_ID;
+import java.util.Map;
 
 /**
  * Migrate encrypted data in key stores and trust stores.
  **/
-public class KeyStoreAndTrustStoreMigration extends Migrator {
+public class KeyStoreAndTrustStoreMigration extends TenantAwareMigrator {
     private static final String KEYSTORE_RESOURCE_PATH = "/repository/security/key-stores/";
     private static final Log log = LogFactory.getLog(KeyStoreAndTrustStoreMigration.class);
     private static final String PASSWORD = "password";
     private static final String PRIVATE_KEY_PASS = "privatekeyPass";
+    private static final List<String> ENCRYPTED_PROPERTIES = Arrays.asList(PASSWORD, PRIVATE_KEY_PASS);
 
     private RegistryService registryService = MigrationServiceDataHolder.getRegistryService();
 
     @Override
-    public void migrate() throws DataMigrationException {
-        try {
-            migrateKeystorePassword();
-        } catch (UserStoreException | CryptoException | RegistryException e) {
-            throw new DataMigrationException("Error has occurred while migrating Key Stores and Trust Stores");
-        }
-    }
-
-    private void startTenantFlow(Tenant tenant) {
-
-        PrivilegedCarbonContext.startTenantFlow();
-        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
-        carbonContext.setTenantId(tenant.getId());
-        carbonContext.setTenantDomain(tenant.getDomain());
+    protected String getName() {
+        return "Key Store and Trust Store migration";
     }
 
-    private void migrateKeystorePassword() throws DataMigrationException, RegistryException, CryptoException,
-            UserStoreException {
+    @Override
+    protected void migrateTenant(Tenant tenant) throws DataMigrationException {
         try {
-            migrateKeyStorePasswordForTenant(SUPER_TENANT_ID);
-            log.info("Keystore passwords migrated for tenant : ".concat(SUPER_TENANT_DOMAIN_NAME));
-        } catch (Exception e) {
-            throw new DataMigrationException("Error while migrating Keystore passwords for tenant : " +
-                    SUPER_TENANT_DOMAIN_NAME, e);
-        }
-
-        //migrating tenant configurations
-        Tenant[] tenants = MigrationServiceDataHolder.getRealmService().getTenantManager().getAllTenants();
-        for (Tenant tenant : tenants) {
-            try {
-                startTenantFlow(tenant);
-                migrateKeyStorePasswordForTenant(tenant.getId());
-                log.info("Keystore passwords migrated for tenant : " + tenant.getDomain());
-            } catch (Exception e) {
-                throw new DataMigrationException("Error while migrating keystore passwords for tenant : "
-                        + tenant.getDomain(), e);
-            } finally {
-                PrivilegedCarbonContext.endTenantFlow();
-            }
+            migrateKeyStorePasswordForTenant(tenant);
+            log.info("Keystore passwords migrated for tenant : " + tenant.getDomain());
+        } catch (RegistryException | CryptoException e) {
+            throw new DataMigrationException("Error while migrating keystore passwords for tenant : "
+                    + tenant.getDomain(), e);
         }
     }
 
-    private void migrateKeyStorePasswordForTenant(int tenantId) throws RegistryException, CryptoException,
+    private void migrateKeyStorePasswordForTenant(Tenant tenant) throws RegistryException, CryptoException,
             DataMigrationException {
 
-        Registry registry = registryService.getGovernanceSystemRegistry(tenantId);
+        Registry registry = registryService.getGovernanceSystemRegistry(tenant.getId());
         if (registry.resourceExists(KEYSTORE_RESOURCE_PATH)) {
             Collection keyStoreCollection = (Collection) registry.get(KEYSTORE_RESOURCE_PATH);
-            for (String keyStorePath : keyStoreCollection.getChildren()) {
-                updateRegistryProperties(registry, keyStorePath,
-                        new ArrayList<>(Arrays.asList(PASSWORD, PRIVATE_KEY_PASS)));
+            BatchedRegistryWriter writer = BatchedRegistryWriter.fromSystemProperties(registry, getJournal(),
+                    getName(), tenant.getDomain());
+            try {
+                for (String keyStorePath : keyStoreCollection.getChildren()) {
+                    if (getJournal().isDone(getName(), tenant.getDomain(), keyStorePath)) {
+                        continue;
+                    }
+                    if (!updateRegistryProperties(writer, registry, keyStorePath, ENCRYPTED_PROPERTIES)) {
+                        getJournal().markDone(getName(), tenant.getDomain(), keyStorePath);
+                    }
+                }
+                writer.commit();
+            } finally {
+                writer.rollback();
             }
         }
     }
 
-    private void updateRegistryProperties(Registry registry, String resource, List<String> properties)
+    /**
+     * Re-encrypts the given properties of the resource in place, and writes the resource in the current batch of
+     * the writer if any of them changed.
+     *
+     * @return whether the resource was written.
+     */
+    private boolean updateRegistryProperties(BatchedRegistryWriter writer, Registry registry, String resource,
+                                             List<String> properties)
             throws RegistryException, CryptoException, DataMigrationException {
         String newValue;
 
         if (registry == null || StringUtils.isEmpty(resource) || CollectionUtils.isEmpty(properties)) {
-            return;
+            return false;
         }
 
-        if (registry.resourceExists(resource)) {
-            try {
-                registry.beginTransaction();
-                Resource resourceObj = registry.get(resource);
-                for (String encryptedPropertyName : properties) {
-                    String oldValue = resourceObj.getProperty(encryptedPropertyName);
-                    if (oldValue != null && !DataMigrationUtil.isNewlyEncrypted(oldValue)) {
-                        newValue = DataMigrationUtil.reEncryptByNewAlgorithm(oldValue);
-                        resourceObj.setProperty(encryptedPropertyName, newValue);
-                    }
-                }
-                registry.put(resource, resourceObj);
-                registry.commitTransaction();
-            } catch (RegistryException e) {
-                registry.rollbackTransaction();
-                throw new DataMigrationException("Unable to update the registry resource '" + resource
-                        + "' ", e);
-            } catch (DataMigrationException e) {
-                throw new DataMigrationException("Error while migrating Key Store and Trust Store.", e);
+        //the resource is a child of the key store collection, hence known to exist
+        writer.begin();
+        Resource resourceObj = registry.get(resource);
+        List<String> oldValues = new ArrayList<>();
+        for (String encryptedPropertyName : properties) {
+            oldValues.add(resourceObj.getProperty(encryptedPropertyName));
+        }
+        //the key store and private key passwords are usually the same, hence re-encrypted together
+        Map<String, String> newValues = ReEncryptionService.getInstance().reEncryptAll(oldValues);
+        if (newValues.isEmpty()) {
+            return false;
+        }
+        for (String encryptedPropertyName : properties) {
+            newValue = newValues.get(resourceObj.getProperty(encryptedPropertyName));
+            if (newValue != null) {
+                resourceObj.setProperty(encryptedPropertyName, newValue);
             }
         }
+        writer.put(resource, resourceObj, resource);
+        return true;
     }
 }
@@ -19,10 +19,34 @@
 package org.wso2.migration.service;
 
 import org.wso2.migration.exception.DataMigrationException;
+import org.wso2.migration.util.MigrationJournal;
 
 /**
  * Migrator specific implementation.
  */
 public abstract class Migrator {
+    private MigrationJournal journal = MigrationJournal.disabled();
+
     public abstract void migrate() throws DataMigrationException;
+
+    /**
+     * Name of the migration, used in the log messages and in the journal.
+     *
+     * @return the name of the migration.
+     */
+    protected abstract String getName();
+
+    /**
+     * Sets the journal in which the migrated units are recorded, and against which the units already migrated by a
+     * previous run are skipped.
+     *
+     * @param journal journal of the migration.
+     */
+    public void setJournal(MigrationJournal journal) {
+        this.journal = journal;
+    }
+
+    protected MigrationJournal getJournal() {
+        return journal;
+    }
 }
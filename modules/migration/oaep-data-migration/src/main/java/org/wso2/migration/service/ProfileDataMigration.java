@@ -28,142 +28,110 @@ import org.wso2.carbon.registry.core.Resource;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.user.api.Tenant;
-import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.migration.exception.DataMigrationException;
 import org.wso2.migration.internal.MigrationServiceDataHolder;
-import org.wso2.migration.util.DataMigrationConstants;
+import org.wso2.migration.util.BatchedRegistryWriter;
 import org.wso2.migration.util.DataMigrationUtil;
+import org.wso2.migration.util.ProfileMarshaller;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import javax.xml.bind.JAXBContext;
+import java.io.InputStream;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 
 
 /**
  * Migrate profiles.
  **/
-public class ProfileDataMigration extends Migrator {
+public class ProfileDataMigration extends TenantAwareMigrator {
     private static final String PROFILE_SAVE_REG_LOCATION = "repository/components/org.wso2.carbon.publish.jmx.agent/";
     private static final Log log = LogFactory.getLog(ProfileDataMigration.class);
-    private Registry registry;
     private RegistryService registryService = MigrationServiceDataHolder.getRegistryService();
 
     @Override
-    public void migrate() throws DataMigrationException {
-        migrateProfilePassword();
+    protected String getName() {
+        return "Profile migration";
     }
 
-    private void migrateProfilePassword() throws DataMigrationException {
-        Tenant[] tenants;
-        //for super tenant
+    @Override
+    protected void migrateTenant(Tenant tenant) throws DataMigrationException {
         try {
-            migrateProfilePasswordForTenant(DataMigrationConstants.SUPER_TENANT_ID);
+            migrateProfilePasswordForTenant(tenant);
         } catch (DataMigrationException e) {
-            log.error("Error while migrating profiles. for tenant '".concat(
-                    String.valueOf(DataMigrationConstants.SUPER_TENANT_ID)).concat("'. "), e);
+            throw new DataMigrationException("Error while migrating profiles for tenant '".concat(
+                    String.valueOf(tenant.getId())).concat("'. "), e);
         }
+    }
+
+    private void migrateProfilePasswordForTenant(Tenant tenant) throws DataMigrationException {
+        Registry registry;
         try {
-            tenants = MigrationServiceDataHolder.getRealmService().getTenantManager().getAllTenants();
-        } catch (UserStoreException e) {
-            log.error("Error while migrating profiles. Tenant retrieving failed. ", e);
-            return;
-        }
-        for (Tenant tenant : tenants) {
-            try {
-                migrateProfilePasswordForTenant(tenant.getId());
-            } catch (DataMigrationException e) {
-                throw new DataMigrationException("Error while migrating profiles for tenant '".concat(
-                        String.valueOf(tenant.getId())).concat("'. "), e);
+            registry = registryService.getGovernanceSystemRegistry(tenant.getId());
+            if (!registry.resourceExists(PROFILE_SAVE_REG_LOCATION)) {
+                return;
             }
+        } catch (RegistryException e) {
+            throw new DataMigrationException("error while obtaining the registry ", e);
         }
-    }
-
-    private void migrateProfilePasswordForTenant(int tenantID) throws DataMigrationException {
+        BatchedRegistryWriter writer = BatchedRegistryWriter.fromSystemProperties(registry, getJournal(), getName(),
+                tenant.getDomain());
         try {
-            registry = registryService.getGovernanceSystemRegistry(tenantID);
             Collection profilesCollection = (Collection) registry.get(PROFILE_SAVE_REG_LOCATION);
             for (String profileName : profilesCollection.getChildren()) {
-                Profile profile = getProfile(profileName);
-                if (!DataMigrationUtil.isNewlyEncrypted(profile.getPass())) {
-                    reEncryptProfileWithNewCipher(profile);
+                if (getJournal().isDone(getName(), tenant.getDomain(), profileName)) {
+                    continue;
+                }
+                //the profile is read within the batch transaction it is updated in
+                writer.begin();
+                Resource resource = registry.get(profileName);
+                Profile profile = getProfile(resource, profileName);
+                if (DataMigrationUtil.isNewlyEncrypted(profile.getPass())) {
+                    getJournal().markDone(getName(), tenant.getDomain(), profileName);
+                } else {
+                    reEncryptProfileWithNewCipher(writer, profileName, resource, profile);
                 }
             }
+            writer.commit();
         } catch (RegistryException e) {
-            log.warn("error while obtaining the registry ", e);
+            throw new DataMigrationException("error while reading the profiles from the registry ", e);
         } catch (CryptoException e) {
             throw new DataMigrationException("error while encrypting the registry ", e);
+        } finally {
+            writer.rollback();
         }
     }
 
-    private void reEncryptProfileWithNewCipher(Profile profile) throws DataMigrationException, CryptoException,
+    private void reEncryptProfileWithNewCipher(BatchedRegistryWriter writer, String path, Resource resource,
+                                               Profile profile) throws DataMigrationException, CryptoException,
             RegistryException {
         String reEncryptedValue = DataMigrationUtil.reEncryptByNewAlgorithm(profile.getPass());
         profile.setPass(reEncryptedValue);
-        saveUpdatedProfile(profile);
+        saveUpdatedProfile(writer, path, resource, profile);
     }
 
-    private Profile getProfile(String profileName) throws DataMigrationException {
-        ByteArrayInputStream byteArrayInputStream;
-        try {
-            //if the profile exists
-            Resource res = registry.get(profileName);
-            byteArrayInputStream = new ByteArrayInputStream((byte[]) res.getContent());
-        } catch (RegistryException e) {
+    private Profile getProfile(Resource resource, String profileName) throws DataMigrationException {
+        try (InputStream contentStream = resource.getContentStream()) {
+            return ProfileMarshaller.getInstance().read(contentStream);
+        } catch (RegistryException | IOException e) {
             log.error("Unable to get profile : " + profileName + ". ", e);
             throw new DataMigrationException("Unable to get profile : ".concat(profileName).concat(". "), e);
-        }
-
-        Profile profile;
-        try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(Profile.class);
-            Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-            profile = (Profile) jaxbUnmarshaller.unmarshal(byteArrayInputStream);
         } catch (JAXBException e) {
             log.error("JAXB unmarshalling exception :" + profileName + ". ", e);
             throw new DataMigrationException("JAXB unmarshalling exception has occurred while retrieving '".
                     concat(profileName).concat("' profile from registry"), e);
         }
-        return profile;
     }
 
-    private void saveUpdatedProfile(Profile profile) throws DataMigrationException, RegistryException {
-        String path = PROFILE_SAVE_REG_LOCATION + profile.getName();
-
-        JAXBContext jaxbContext;
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    /**
+     * Updates the content of the existing profile resource in place, in the current batch of the writer.
+     */
+    private void saveUpdatedProfile(BatchedRegistryWriter writer, String path, Resource resource, Profile profile)
+            throws DataMigrationException, RegistryException {
         try {
-            jaxbContext = JAXBContext.newInstance(Profile.class);
-            Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-            jaxbMarshaller.marshal(profile, byteArrayOutputStream);
+            resource.setContent(ProfileMarshaller.getInstance().write(profile));
         } catch (JAXBException e) {
             throw new DataMigrationException("JAXB unmarshalling exception has occurred while saving '".
                     concat(profile.getName()).concat("'."), e);
         }
-        //replace the profile if it exists
-        try {
-            Resource res = registry.newResource();
-            res.setContent(byteArrayOutputStream.toString());
-            //delete the existing profile
-            registry.beginTransaction();
-            registry.delete(path);
-            //save the new profile
-            registry.put(path, res);
-            registry.commitTransaction();
-        } catch (RegistryException e) {
-            registry.rollbackTransaction();
-            throw new DataMigrationException("Error has occurred while trying to save '".concat(profile.getName())
-                    .concat("' profile on registry. "), e);
-        }
-
-        try {
-            byteArrayOutputStream.close();
-        } catch (IOException e) {
-            // Just log the exception. Do nothing.
-            log.warn("Unable to close byte stream ...", e);
-        }
+        writer.put(path, resource, path);
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.service;
+
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.user.api.Tenant;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.migration.exception.DataMigrationException;
+import org.wso2.migration.internal.MigrationServiceDataHolder;
+import org.wso2.migration.util.MigrationEngine;
+import org.wso2.migration.util.MigrationUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.wso2.carbon.base.MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+import static org.wso2.carbon.base.MultitenantConstants.SUPER_TENANT_ID;
+
+/**
+ * Migrator of per tenant data, which migrates the super tenant and all the other tenants in parallel on a
+ * {@link MigrationEngine}. Each tenant is migrated within its own tenant flow, and a failing tenant does not stop the
+ * migration of the others. Tenants are recorded in the journal as they are migrated, and implementations may also
+ * record the individual resources of a tenant, so that a partially migrated tenant is resumed where it stopped.
+ */
+public abstract class TenantAwareMigrator extends Migrator {
+
+    @Override
+    public void migrate() throws DataMigrationException {
+        List<MigrationUnit> units = new ArrayList<>();
+        for (final Tenant tenant : getTenants()) {
+            units.add(new MigrationUnit(tenant.getDomain()) {
+                @Override
+                public void migrate() throws DataMigrationException {
+                    startTenantFlow(tenant);
+                    try {
+                        migrateTenant(tenant);
+                    } finally {
+                        PrivilegedCarbonContext.endTenantFlow();
+                    }
+                }
+            });
+        }
+        MigrationEngine.fromSystemProperties(getName(), getJournal()).run(units);
+    }
+
+    /**
+     * Migrates the data of the given tenant. This is called concurrently for different tenants.
+     *
+     * @param tenant the tenant to be migrated.
+     * @throws DataMigrationException if the data of the tenant could not be migrated.
+     */
+    protected abstract void migrateTenant(Tenant tenant) throws DataMigrationException;
+
+    private List<Tenant> getTenants() throws DataMigrationException {
+        List<Tenant> tenants = new ArrayList<>();
+        Tenant superTenant = new Tenant();
+        superTenant.setId(SUPER_TENANT_ID);
+        superTenant.setDomain(SUPER_TENANT_DOMAIN_NAME);
+        tenants.add(superTenant);
+        try {
+            for (Tenant tenant : MigrationServiceDataHolder.getRealmService().getTenantManager().getAllTenants()) {
+                tenants.add(tenant);
+            }
+        } catch (UserStoreException e) {
+            throw new DataMigrationException("Error while retrieving the tenants to be migrated by " + getName(), e);
+        }
+        return tenants;
+    }
+
+    private static void startTenantFlow(Tenant tenant) {
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        carbonContext.setTenantId(tenant.getId());
+        carbonContext.setTenantDomain(tenant.getDomain());
+    }
+}
@@ -25,7 +25,6 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.core.util.CryptoException;
 import org.wso2.carbon.user.api.Tenant;
 import org.wso2.migration.exception.DataMigrationException;
-import org.wso2.migration.internal.MigrationServiceDataHolder;
 import org.wso2.migration.util.DataMigrationConstants;
 import org.wso2.migration.util.DataMigrationUtil;
 
@@ -46,43 +45,33 @@ import javax.xml.stream.XMLStreamReader;
 /**
  * Migrate user store passwords.
  **/
-public class UserStorePasswordMigration extends Migrator {
+public class UserStorePasswordMigration extends TenantAwareMigrator {
     private static final Log log = LogFactory.getLog(UserStorePasswordMigration.class);
 
     @Override
     public void migrate() throws DataMigrationException {
         log.info("Migration starting on Secondary User Stores");
-        updateSuperTenantConfigs();
-        updateTenantConfigs();
+        super.migrate();
     }
 
-    private void updateTenantConfigs() {
-        Tenant[] tenants;
-        try {
-            tenants = MigrationServiceDataHolder.getRealmService().getTenantManager().getAllTenants();
-            for (Tenant tenant : tenants) {
-                File[] userstoreConfigs = getUserStoreConfigFiles(tenant.getId());
-                for (File file : userstoreConfigs) {
-                    if (file.isFile()) {
-                        updatePassword(file.getAbsolutePath());
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error while updating secondary user store password for tenant", e);
-        }
+    @Override
+    protected String getName() {
+        return "Secondary User Store migration";
     }
 
-    private void updateSuperTenantConfigs() {
+    @Override
+    protected void migrateTenant(Tenant tenant) throws DataMigrationException {
         try {
-            File[] userstoreConfigs = getUserStoreConfigFiles(DataMigrationConstants.SUPER_TENANT_ID);
+            File[] userstoreConfigs = getUserStoreConfigFiles(tenant.getId());
             for (File file : userstoreConfigs) {
-                if (file.isFile()) {
+                if (file.isFile() && !getJournal().isDone(getName(), tenant.getDomain(), file.getName())) {
                     updatePassword(file.getAbsolutePath());
+                    getJournal().markDone(getName(), tenant.getDomain(), file.getName());
                 }
             }
-        } catch (Exception e) {
-            log.error("Error while updating secondary user store password for super tenant", e);
+        } catch (FileNotFoundException | CryptoException e) {
+            throw new DataMigrationException("Error while updating secondary user store password for tenant : " +
+                    tenant.getDomain(), e);
         }
     }
 
@@ -126,11 +115,12 @@ public class UserStorePasswordMigration extends Migrator {
             }
 
             if (newEncryptedPassword != null) {
-                OutputStream outputStream = new FileOutputStream(filePath);
-                documentElement.serialize(outputStream);
+                try (OutputStream outputStream = new FileOutputStream(filePath)) {
+                    documentElement.serialize(outputStream);
+                }
             }
-        } catch (XMLStreamException ex) {
-            log.error("Error while updating password for: " + filePath);
+        } catch (XMLStreamException | IOException e) {
+            throw new DataMigrationException("Error while updating password for: " + filePath, e);
         } finally {
             try {
                 if (parser != null) {
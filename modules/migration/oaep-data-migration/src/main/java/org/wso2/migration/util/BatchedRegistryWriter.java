@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.registry.core.Registry;
+import org.wso2.carbon.registry.core.Resource;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
+import org.wso2.migration.exception.DataMigrationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the migrated resources of a tenant registry in batches, each committed as a single registry transaction,
+ * instead of a transaction per resource.
+ * <p/>
+ * The resources of a batch are recorded in the {@link MigrationJournal} once the batch is committed, so that a batch
+ * which is rolled back is migrated again when the migration is resumed. A writer is used by a single thread, and must
+ * be committed once all its updates are written, or rolled back if the migration of the tenant fails.
+ **/
+public class BatchedRegistryWriter {
+    private static final Log log = LogFactory.getLog(BatchedRegistryWriter.class);
+
+    private final Registry registry;
+    private final int batchSize;
+    private final MigrationJournal journal;
+    private final String migrator;
+    private final String tenant;
+    private final List<String> pendingResources = new ArrayList<>();
+    private boolean inTransaction;
+
+    public BatchedRegistryWriter(Registry registry, int batchSize, MigrationJournal journal, String migrator,
+                                 String tenant) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Registry batch size must be positive: " + batchSize);
+        }
+        this.registry = registry;
+        this.batchSize = batchSize;
+        this.journal = journal;
+        this.migrator = migrator;
+        this.tenant = tenant;
+    }
+
+    /**
+     * Creates a writer committing batches of the size given with the {@link DataMigrationConstants#REGISTRY_BATCH_SIZE}
+     * system property.
+     *
+     * @param registry registry of the tenant.
+     * @param journal  journal in which the committed resources are recorded.
+     * @param migrator name of the migration, under which the resources are recorded.
+     * @param tenant   domain of the tenant.
+     * @return the registry writer.
+     */
+    public static BatchedRegistryWriter fromSystemProperties(Registry registry, MigrationJournal journal,
+                                                             String migrator, String tenant) {
+        int batchSize = Integer.getInteger(DataMigrationConstants.REGISTRY_BATCH_SIZE,
+                DataMigrationConstants.DEFAULT_REGISTRY_BATCH_SIZE);
+        return new BatchedRegistryWriter(registry, Math.max(1, batchSize), journal, migrator, tenant);
+    }
+
+    /**
+     * Begins the transaction of the current batch, if it is not begun yet. Resources which are updated in place
+     * should be read after this, so that they are read within the transaction they are written in.
+     *
+     * @throws DataMigrationException if the transaction cannot be begun.
+     */
+    public void begin() throws DataMigrationException {
+        if (!inTransaction) {
+            try {
+                registry.beginTransaction();
+            } catch (RegistryException e) {
+                throw new DataMigrationException("Unable to begin a registry transaction for tenant : " + tenant, e);
+            }
+            inTransaction = true;
+        }
+    }
+
+    /**
+     * Writes the given resource in the current batch, committing the batch once it is full.
+     *
+     * @param path         path of the resource.
+     * @param resource     the updated resource, usually the one read from the same path.
+     * @param journalEntry name under which the resource is recorded in the journal once committed.
+     * @throws DataMigrationException if the resource cannot be written, in which case the batch is rolled back.
+     */
+    public void put(String path, Resource resource, String journalEntry) throws DataMigrationException {
+        begin();
+        try {
+            registry.put(path, resource);
+        } catch (RegistryException e) {
+            rollback();
+            throw new DataMigrationException("Unable to update the registry resource '" + path + "' ", e);
+        }
+        pendingResources.add(journalEntry);
+        if (pendingResources.size() >= batchSize) {
+            commit();
+        }
+    }
+
+    /**
+     * Commits the current batch, and records its resources in the journal.
+     *
+     * @throws DataMigrationException if the batch cannot be committed, in which case it is rolled back.
+     */
+    public void commit() throws DataMigrationException {
+        if (!inTransaction) {
+            return;
+        }
+        try {
+            registry.commitTransaction();
+        } catch (RegistryException e) {
+            rollback();
+            throw new DataMigrationException("Unable to commit the registry updates of tenant : " + tenant, e);
+        }
+        inTransaction = false;
+        for (String resource : pendingResources) {
+            journal.markDone(migrator, tenant, resource);
+        }
+        pendingResources.clear();
+    }
+
+    /**
+     * Rolls back the current batch, if any. This is a no-op once the writer is committed.
+     */
+    public void rollback() {
+        if (!inTransaction) {
+            return;
+        }
+        inTransaction = false;
+        pendingResources.clear();
+        try {
+            registry.rollbackTransaction();
+        } catch (RegistryException e) {
+            log.error("Unable to roll back the registry updates of tenant : " + tenant, e);
+        }
+    }
+}
@@ -26,4 +26,11 @@ public class DataMigrationConstants {
     public static final String EVENT_RECIEVER_PATH = "/repository/deployment/server/eventreceivers";
     public static final String CARBON_HOME = "carbon.home";
     public static final int SUPER_TENANT_ID = -1234;
+    public static final String MIGRATION_THREADS = "migrationThreads";
+    public static final String MIGRATION_PROGRESS_INTERVAL = "migrationProgressInterval";
+    public static final long DEFAULT_MIGRATION_PROGRESS_INTERVAL = 10;
+    public static final String MIGRATION_JOURNAL = "migrationJournal";
+    public static final String REGISTRY_BATCH_SIZE = "registryBatchSize";
+    public static final int DEFAULT_REGISTRY_BATCH_SIZE = 100;
+    public static final String DEFAULT_MIGRATION_JOURNAL_PATH = "/repository/data/das-migration.journal";
 }
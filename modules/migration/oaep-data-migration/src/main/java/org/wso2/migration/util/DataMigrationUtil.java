@@ -18,9 +18,7 @@
 
 package org.wso2.migration.util;
 
-import org.wso2.carbon.core.internal.CarbonCoreDataHolder;
 import org.wso2.carbon.core.util.CryptoException;
-import org.wso2.carbon.core.util.CryptoUtil;
 import org.wso2.migration.exception.DataMigrationException;
 
 /**
@@ -33,21 +31,10 @@ public class DataMigrationUtil {
     }
 
     public static boolean isNewlyEncrypted(String encryptedValue) throws DataMigrationException, CryptoException {
-        CryptoUtil cryptoUtil;
-        try {
-            cryptoUtil = CryptoUtil.getDefaultCryptoUtil(CarbonCoreDataHolder.getInstance().
-                            getServerConfigurationService(),
-                    CarbonCoreDataHolder.getInstance().getRegistryService());
-        } catch (Exception e) {
-            throw new DataMigrationException("Error while initializing cryptoUtil", e);
-        }
-        return cryptoUtil.base64DecodeAndIsSelfContainedCipherText(encryptedValue);
+        return ReEncryptionService.getInstance().isNewlyEncrypted(encryptedValue);
     }
 
-    public static String reEncryptByNewAlgorithm(String value) throws CryptoException {
-        byte[] decryptedValue = CryptoUtil.getDefaultCryptoUtil().base64DecodeAndDecrypt(
-                value, "RSA");
-        return CryptoUtil.getDefaultCryptoUtil()
-                .encryptAndBase64Encode(decryptedValue);
+    public static String reEncryptByNewAlgorithm(String value) throws DataMigrationException, CryptoException {
+        return ReEncryptionService.getInstance().reEncrypt(value);
     }
 }
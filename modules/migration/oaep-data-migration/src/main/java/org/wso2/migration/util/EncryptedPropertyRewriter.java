@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.util;
+
+import org.wso2.carbon.core.util.CryptoException;
+import org.wso2.migration.exception.DataMigrationException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Re-encrypts the text of the {@code encrypted="true"} properties of event publisher and receiver configurations.
+ * <p/>
+ * A file is first scanned for its encrypted values, and is left untouched if none of them needs to be re-encrypted.
+ * Otherwise its events are streamed into a new file, as they are except for the re-encrypted property text, which then
+ * replaces the original file. The StAX factories are shared, and the rewriter can be used by several threads.
+ **/
+public class EncryptedPropertyRewriter {
+    private static final String PROPERTY = "property";
+    private static final String ENCRYPTED = "encrypted";
+    private static final String DEFAULT_ENCODING = "UTF-8";
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    private final ReEncryptionService reEncryptionService;
+
+    public EncryptedPropertyRewriter(ReEncryptionService reEncryptionService) {
+        this.reEncryptionService = reEncryptionService;
+    }
+
+    /**
+     * Re-encrypts the encrypted properties of the given file which are not encrypted with the current cipher yet.
+     *
+     * @param file the configuration file.
+     * @return whether the file was rewritten.
+     * @throws DataMigrationException if the file cannot be read, re-encrypted or written.
+     */
+    public boolean rewrite(File file) throws DataMigrationException {
+        Path tempFile = null;
+        try {
+            Map<String, String> reEncryptedValues = reEncryptionService.reEncryptAll(readEncryptedValues(file));
+            if (reEncryptedValues.isEmpty()) {
+                return false;
+            }
+            //the new file is written next to the original, and does not end with .xml, hence is not deployed
+            tempFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(),
+                    ".migrating");
+            write(file, tempFile.toFile(), reEncryptedValues);
+            copyPermissions(file.toPath(), tempFile);
+            Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+            return true;
+        } catch (XMLStreamException | IOException | CryptoException e) {
+            throw new DataMigrationException("Error occurred while migrating encrypted properties in file : "
+                    .concat(file.getAbsolutePath()), e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignore) {
+                    //the migration error is already being reported
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the new file the permissions, the owner and the group of the original one, as the temporary file is only
+     * readable by the user running the migration.
+     */
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (targetView == null) {
+            return;
+        }
+        PosixFileAttributes sourceAttributes = Files.readAttributes(source, PosixFileAttributes.class);
+        PosixFileAttributes targetAttributes = targetView.readAttributes();
+        if (!sourceAttributes.owner().equals(targetAttributes.owner())) {
+            targetView.setOwner(sourceAttributes.owner());
+        }
+        if (!sourceAttributes.group().equals(targetAttributes.group())) {
+            targetView.setGroup(sourceAttributes.group());
+        }
+        targetView.setPermissions(sourceAttributes.permissions());
+    }
+
+    private static List<String> readEncryptedValues(File file) throws IOException, XMLStreamException {
+        List<String> values = new ArrayList<>();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && isEncryptedProperty(reader)) {
+                        values.add(reader.getElementText());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return values;
+    }
+
+    private static void write(File file, File newFile, Map<String, String> reEncryptedValues)
+            throws IOException, XMLStreamException {
+        try (InputStream inputStream = new FileInputStream(file);
+             OutputStream outputStream = new FileOutputStream(newFile)) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+            XMLEventWriter writer = null;
+            try {
+                StringBuilder propertyText = null;
+                while (reader.hasNext()) {
+                    XMLEvent event = reader.nextEvent();
+                    if (writer == null) {
+                        writer = OUTPUT_FACTORY.createXMLEventWriter(outputStream, getEncoding(event));
+                    }
+                    if (propertyText != null) {
+                        if (event.isCharacters()) {
+                            propertyText.append(event.asCharacters().getData());
+                            continue;
+                        }
+                        String value = propertyText.toString();
+                        String reEncryptedValue = reEncryptedValues.get(value);
+                        writer.add(EVENT_FACTORY.createCharacters(reEncryptedValue != null ? reEncryptedValue : value));
+                        propertyText = null;
+                    }
+                    if (event.isStartElement() && isEncryptedProperty(event.asStartElement())) {
+                        propertyText = new StringBuilder();
+                    }
+                    writer.add(event);
+                }
+                if (writer != null) {
+                    writer.flush();
+                }
+            } finally {
+                reader.close();
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    private static String getEncoding(XMLEvent firstEvent) {
+        if (firstEvent.isStartDocument() && ((StartDocument) firstEvent).encodingSet()) {
+            return ((StartDocument) firstEvent).getCharacterEncodingScheme();
+        }
+        return DEFAULT_ENCODING;
+    }
+
+    private static boolean isEncryptedProperty(XMLStreamReader reader) {
+        if (!PROPERTY.equals(reader.getLocalName())) {
+            return false;
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (ENCRYPTED.equals(reader.getAttributeLocalName(i))) {
+                return Boolean.parseBoolean(reader.getAttributeValue(i));
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEncryptedProperty(StartElement element) {
+        if (!PROPERTY.equals(element.getName().getLocalPart())) {
+            return false;
+        }
+        Iterator<?> attributes = element.getAttributes();
+        while (attributes.hasNext()) {
+            Attribute attribute = (Attribute) attributes.next();
+            if (ENCRYPTED.equals(attribute.getName().getLocalPart())) {
+                return Boolean.parseBoolean(attribute.getValue());
+            }
+        }
+        return false;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        //the configurations do not use DTDs, hence their external entities are not resolved
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.migration.exception.DataMigrationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent units of migration work, such as the data of a single tenant, on a bounded pool of worker threads.
+ * <p/>
+ * A failing unit does not stop the others: every unit is attempted, the failures are collected, and reported together
+ * once all the units are done. The progress and the throughput are logged periodically while the units run. The
+ * units are recorded in the {@link MigrationJournal} under the name of the migration, and the units already done are
+ * skipped.
+ **/
+public class MigrationEngine {
+    private static final Log log = LogFactory.getLog(MigrationEngine.class);
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    private final String name;
+    private final int threadCount;
+    private final long progressIntervalMillis;
+    private final MigrationJournal journal;
+
+    public MigrationEngine(String name, int threadCount, long progressIntervalMillis, MigrationJournal journal) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Migration thread count must be positive: " + threadCount);
+        }
+        this.name = name;
+        this.threadCount = threadCount;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.journal = journal;
+    }
+
+    /**
+     * Creates an engine sized with the {@link DataMigrationConstants#MIGRATION_THREADS} system property, which
+     * defaults to the number of available processors, and logging its progress every
+     * {@link DataMigrationConstants#MIGRATION_PROGRESS_INTERVAL} seconds.
+     *
+     * @param name    name of the migration, used in the log messages and the journal.
+     * @param journal journal of the migration.
+     * @return the migration engine.
+     */
+    public static MigrationEngine fromSystemProperties(String name, MigrationJournal journal) {
+        int threadCount = Integer.getInteger(DataMigrationConstants.MIGRATION_THREADS,
+                Runtime.getRuntime().availableProcessors());
+        long progressInterval = Long.getLong(DataMigrationConstants.MIGRATION_PROGRESS_INTERVAL,
+                DataMigrationConstants.DEFAULT_MIGRATION_PROGRESS_INTERVAL);
+        return new MigrationEngine(name, Math.max(1, threadCount),
+                TimeUnit.SECONDS.toMillis(Math.max(1, progressInterval)), journal);
+    }
+
+    /**
+     * Runs the given units and waits for all of them to complete.
+     *
+     * @param allUnits units of migration work.
+     * @throws DataMigrationException if any of the units failed, or the migration was interrupted.
+     */
+    public void run(List<? extends MigrationUnit> allUnits) throws DataMigrationException {
+        List<MigrationUnit> units = new ArrayList<>();
+        for (MigrationUnit unit : allUnits) {
+            if (!journal.isDone(name, unit.getTenant(), unit.getResource())) {
+                units.add(unit);
+            }
+        }
+        if (units.size() < allUnits.size()) {
+            log.info(name + ": skipping " + (allUnits.size() - units.size()) + " unit(s) already done");
+        }
+        if (units.isEmpty()) {
+            return;
+        }
+        log.info(name + ": migrating " + units.size() + " unit(s) with " +
+                Math.min(threadCount, units.size()) + " thread(s)");
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, units.size()),
+                new MigrationThreadFactory(name));
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<Void>, MigrationUnit> submittedUnits = new HashMap<>();
+        List<MigrationUnit> failedUnits = new ArrayList<>();
+        Throwable firstFailure = null;
+        long startTime = System.currentTimeMillis();
+        long lastProgressTime = startTime;
+        int done = 0;
+        try {
+            for (final MigrationUnit unit : units) {
+                submittedUnits.put(completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        unit.migrate();
+                        journal.markDone(name, unit.getTenant(), unit.getResource());
+                        return null;
+                    }
+                }), unit);
+            }
+            while (done < units.size()) {
+                Future<Void> result = completionService.poll(progressIntervalMillis, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    done++;
+                    try {
+                        result.get();
+                    } catch (ExecutionException e) {
+                        MigrationUnit failedUnit = submittedUnits.get(result);
+                        failedUnits.add(failedUnit);
+                        journal.markFailed(name, failedUnit.getTenant(), failedUnit.getResource(), e.getCause());
+                        if (firstFailure == null) {
+                            firstFailure = e.getCause();
+                        }
+                        log.error(name + ": error while migrating " + failedUnit.getName(), e.getCause());
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastProgressTime >= progressIntervalMillis && done < units.size()) {
+                    lastProgressTime = now;
+                    log.info(name + ": " + done + " of " + units.size() + " unit(s) done, " + failedUnits.size() +
+                            " failed, " + throughput(done, now - startTime) + " unit(s)/s");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataMigrationException(name + ": migration was interrupted after " + done + " of " +
+                    units.size() + " unit(s)", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        log.info(name + ": " + (done - failedUnits.size()) + " of " + units.size() + " unit(s) migrated in " +
+                elapsed / 1000.0 + " s (" + throughput(done, elapsed) + " unit(s)/s), " + failedUnits.size() +
+                " failed");
+        if (!failedUnits.isEmpty()) {
+            throw new DataMigrationException(name + ": migration failed for " + failedUnits.size() + " of " +
+                    units.size() + " unit(s) : " + describe(failedUnits), firstFailure);
+        }
+    }
+
+    private static String describe(List<MigrationUnit> failedUnits) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < failedUnits.size() && i < MAX_REPORTED_FAILURES; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(failedUnits.get(i).getName());
+        }
+        if (failedUnits.size() > MAX_REPORTED_FAILURES) {
+            builder.append(" and ").append(failedUnits.size() - MAX_REPORTED_FAILURES).append(" more");
+        }
+        return builder.toString();
+    }
+
+    private static String throughput(int count, long elapsedMillis) {
+        return elapsedMillis == 0 ? "-" : String.format("%.2f", count * 1000.0 / elapsedMillis);
+    }
+
+    /**
+     * Names the worker threads after the migration, so that their log lines can be told apart.
+     */
+    private static class MigrationThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private MigrationThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DataMigration-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
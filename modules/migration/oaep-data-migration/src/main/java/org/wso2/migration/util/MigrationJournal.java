@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.migration.exception.DataMigrationException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent journal of the completed units of a migration, each identified by its migrator, tenant and resource, so
+ * that a migration which stopped halfway can be restarted without repeating the completed units.
+ * <p/>
+ * The journal is a text file with a record per line: {@code DONE} and {@code FAILED} records of the units, followed by
+ * a {@code COMPLETED} record once the whole migration has succeeded. A restarted migration skips the units recorded
+ * as done, and retries the failed and the unrecorded ones. A journal of a completed migration is started over.
+ **/
+public class MigrationJournal implements Closeable {
+    private static final Log log = LogFactory.getLog(MigrationJournal.class);
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    private static final String COMPLETED = "COMPLETED";
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Resource name of a unit covering all the resources of a tenant.
+     */
+    public static final String ALL_RESOURCES = "*";
+
+    private final File file;
+    private final Set<String> doneUnits;
+    private final Writer writer;
+
+    private MigrationJournal(File file, Set<String> doneUnits, Writer writer) {
+        this.file = file;
+        this.doneUnits = doneUnits;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the journal at the given path, loading the units recorded as done by a previous migration which did not
+     * complete.
+     *
+     * @param path path of the journal file, created if it does not exist.
+     * @return the journal.
+     * @throws DataMigrationException if the journal cannot be read or written.
+     */
+    public static MigrationJournal open(String path) throws DataMigrationException {
+        File file = new File(path);
+        Set<String> doneUnits = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        boolean append = false;
+        if (file.isFile()) {
+            int failedCount = load(file, doneUnits);
+            if (failedCount < 0) {
+                doneUnits.clear();
+                log.info("Previous migration recorded in journal '" + path + "' was completed, starting over.");
+            } else {
+                append = true;
+                log.info("Resuming migration from journal '" + path + "' : " + doneUnits.size() +
+                        " unit(s) already done, " + failedCount + " failed unit(s) will be retried.");
+            }
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new DataMigrationException("Unable to create the directory of the migration journal : " + path);
+        }
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append),
+                    StandardCharsets.UTF_8));
+            return new MigrationJournal(file, doneUnits, writer);
+        } catch (IOException e) {
+            throw new DataMigrationException("Unable to open the migration journal : " + path, e);
+        }
+    }
+
+    /**
+     * Returns a journal which records nothing, for migrations which are not resumable.
+     *
+     * @return the disabled journal.
+     */
+    public static MigrationJournal disabled() {
+        return new MigrationJournal(null, Collections.<String>emptySet(), null);
+    }
+
+    public String getPath() {
+        return file == null ? null : file.getPath();
+    }
+
+    public boolean isDone(String migrator, String tenant, String resource) {
+        return doneUnits.contains(key(migrator, tenant, resource));
+    }
+
+    public void markDone(String migrator, String tenant, String resource) throws DataMigrationException {
+        String key = key(migrator, tenant, resource);
+        if (writer != null && doneUnits.add(key)) {
+            append(DONE + SEPARATOR + key);
+        }
+    }
+
+    public void markFailed(String migrator, String tenant, String resource, Throwable cause)
+            throws DataMigrationException {
+        if (writer != null) {
+            String message = cause == null || cause.getMessage() == null ? "" : cause.getMessage();
+            append(FAILED + SEPARATOR + key(migrator, tenant, resource) + SEPARATOR +
+                    message.replaceAll("\\s+", " "));
+        }
+    }
+
+    /**
+     * Records that the whole migration has succeeded, so that the next migration starts over.
+     *
+     * @throws DataMigrationException if the journal cannot be written.
+     */
+    public void markCompleted() throws DataMigrationException {
+        if (writer != null) {
+            append(COMPLETED);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            synchronized (this) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Records are flushed as they are written, so that they survive the migration being stopped at any point.
+     */
+    private synchronized void append(String record) throws DataMigrationException {
+        try {
+            writer.write(record);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            throw new DataMigrationException("Unable to write to the migration journal : " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Loads the done units of the journal, and returns the number of distinct failed units which are not done, or -1
+     * if the journal is of a completed migration. A partially written last record is ignored.
+     */
+    private static int load(File file, Set<String> doneUnits) throws DataMigrationException {
+        Set<String> failedUnits = new HashSet<>();
+        boolean completed = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (COMPLETED.equals(line)) {
+                    completed = true;
+                } else if (DONE.equals(fields[0]) && fields.length == 4) {
+                    doneUnits.add(key(fields[1], fields[2], fields[3]));
+                    completed = false;
+                } else if (FAILED.equals(fields[0]) && fields.length == 5) {
+                    failedUnits.add(key(fields[1], fields[2], fields[3]));
+                    completed = false;
+                }
+            }
+        } catch (IOException e) {
+            throw new DataMigrationException("Unable to read the migration journal : " + file.getPath(), e);
+        }
+        if (completed) {
+            return -1;
+        }
+        failedUnits.removeAll(doneUnits);
+        return failedUnits.size();
+    }
+
+    private static String key(String migrator, String tenant, String resource) {
+        return migrator + SEPARATOR + tenant + SEPARATOR + resource;
+    }
+}
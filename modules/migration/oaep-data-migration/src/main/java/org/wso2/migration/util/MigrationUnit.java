@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.util;
+
+import org.wso2.migration.exception.DataMigrationException;
+
+/**
+ * A unit of migration work which is independent of the other units, and can hence be run on any thread of the
+ * {@link MigrationEngine}. A unit is identified by its tenant and resource, under which it is recorded in the
+ * {@link MigrationJournal}.
+ **/
+public abstract class MigrationUnit {
+    private final String tenant;
+    private final String resource;
+
+    /**
+     * Creates a unit covering all the resources of the given tenant.
+     *
+     * @param tenant domain of the tenant.
+     */
+    protected MigrationUnit(String tenant) {
+        this(tenant, MigrationJournal.ALL_RESOURCES);
+    }
+
+    protected MigrationUnit(String tenant, String resource) {
+        this.tenant = tenant;
+        this.resource = resource;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * Name of the unit, used to report its progress and failure.
+     *
+     * @return the name of the unit.
+     */
+    public String getName() {
+        return MigrationJournal.ALL_RESOURCES.equals(resource) ? tenant : resource + " of tenant " + tenant;
+    }
+
+    public abstract void migrate() throws DataMigrationException;
+}
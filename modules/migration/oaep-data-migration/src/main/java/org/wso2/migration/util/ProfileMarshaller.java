@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.util;
+
+import org.wso2.carbon.analytics.common.jmx.agent.profiles.Profile;
+import org.wso2.migration.exception.DataMigrationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * Reads and writes JMX agent profiles with a single JAXB context, which is expensive to create but safe to share.
+ * Marshallers and unmarshallers are not thread safe, hence they are pooled, and each one is used by a single migration
+ * thread at a time.
+ **/
+public class ProfileMarshaller {
+    private static final int INITIAL_BUFFER_SIZE = 2048;
+    private static volatile ProfileMarshaller instance;
+
+    private final JAXBContext jaxbContext;
+    private final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<>();
+    private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
+
+    private ProfileMarshaller(JAXBContext jaxbContext) {
+        this.jaxbContext = jaxbContext;
+    }
+
+    /**
+     * Returns the shared profile marshaller, creating the JAXB context on the first call.
+     *
+     * @return the profile marshaller.
+     * @throws DataMigrationException if the JAXB context cannot be created.
+     */
+    public static ProfileMarshaller getInstance() throws DataMigrationException {
+        ProfileMarshaller result = instance;
+        if (result == null) {
+            synchronized (ProfileMarshaller.class) {
+                result = instance;
+                if (result == null) {
+                    try {
+                        result = new ProfileMarshaller(JAXBContext.newInstance(Profile.class));
+                    } catch (JAXBException e) {
+                        throw new DataMigrationException("Error while creating the JAXB context of profiles", e);
+                    }
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a profile from the given stream.
+     *
+     * @param inputStream stream of the profile XML, which is not closed.
+     * @return the profile.
+     * @throws JAXBException if the profile cannot be unmarshalled.
+     */
+    public Profile read(InputStream inputStream) throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        if (unmarshaller == null) {
+            unmarshaller = jaxbContext.createUnmarshaller();
+        }
+        Profile profile = (Profile) unmarshaller.unmarshal(inputStream);
+        unmarshallers.offer(unmarshaller);
+        return profile;
+    }
+
+    /**
+     * Writes the given profile as XML.
+     *
+     * @param profile the profile.
+     * @return the UTF-8 encoded profile XML.
+     * @throws JAXBException if the profile cannot be marshalled.
+     */
+    public byte[] write(Profile profile) throws JAXBException {
+        Marshaller marshaller = marshallers.poll();
+        if (marshaller == null) {
+            marshaller = jaxbContext.createMarshaller();
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        marshaller.marshal(profile, outputStream);
+        marshallers.offer(marshaller);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.migration.util;
+
+import org.apache.axiom.om.util.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.core.internal.CarbonCoreDataHolder;
+import org.wso2.carbon.core.util.CryptoException;
+import org.wso2.carbon.core.util.CryptoUtil;
+import org.wso2.carbon.core.util.KeyStoreManager;
+import org.wso2.migration.exception.DataMigrationException;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.crypto.Cipher;
+
+/**
+ * Re-encrypts the values encrypted with the legacy RSA cipher, with the self contained cipher text of the current
+ * crypto service.
+ * <p/>
+ * The crypto utility and the primary key store private key are resolved once, and each migration thread keeps its own
+ * initialized decryption cipher. As the legacy cipher text of a value is deterministic, the same value, such as a
+ * password shared between tenants, is only decrypted once: the re-encrypted values are remembered, up to
+ * {@link #MAX_REMEMBERED_VALUES} of them, and batches of values are de-duplicated before they are re-encrypted.
+ **/
+public class ReEncryptionService {
+    private static final Log log = LogFactory.getLog(ReEncryptionService.class);
+    private static final String LEGACY_ALGORITHM = "RSA";
+    private static final String CRYPTO_PROVIDER = "BC";
+    private static final int MAX_REMEMBERED_VALUES = 10000;
+    private static volatile ReEncryptionService instance;
+
+    private final CryptoUtil cryptoUtil;
+    private final PrivateKey privateKey;
+    private final ThreadLocal<Cipher> decryptionCiphers = new ThreadLocal<>();
+    private final ConcurrentMap<String, String> reEncryptedValues = new ConcurrentHashMap<>();
+
+    private ReEncryptionService(CryptoUtil cryptoUtil, PrivateKey privateKey) {
+        this.cryptoUtil = cryptoUtil;
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * Returns the shared re-encryption service, resolving the crypto utility and the private key on the first call.
+     *
+     * @return the re-encryption service.
+     * @throws DataMigrationException if the crypto utility cannot be initialized.
+     */
+    public static ReEncryptionService getInstance() throws DataMigrationException {
+        ReEncryptionService result = instance;
+        if (result == null) {
+            synchronized (ReEncryptionService.class) {
+                result = instance;
+                if (result == null) {
+                    result = new ReEncryptionService(getCryptoUtil(), getPrivateKey());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public boolean isNewlyEncrypted(String encryptedValue) throws CryptoException {
+        return cryptoUtil.base64DecodeAndIsSelfContainedCipherText(encryptedValue);
+    }
+
+    /**
+     * Re-encrypts the given value, encrypted with the legacy RSA cipher, with the current cipher.
+     *
+     * @param value base64 encoded legacy cipher text.
+     * @return base64 encoded self contained cipher text of the same value.
+     * @throws CryptoException if the value cannot be decrypted or encrypted.
+     */
+    public String reEncrypt(String value) throws CryptoException {
+        String reEncryptedValue = reEncryptedValues.get(value);
+        if (reEncryptedValue == null) {
+            reEncryptedValue = cryptoUtil.encryptAndBase64Encode(decrypt(value));
+            if (reEncryptedValues.size() < MAX_REMEMBERED_VALUES) {
+                reEncryptedValues.putIfAbsent(value, reEncryptedValue);
+            }
+        }
+        return reEncryptedValue;
+    }
+
+    /**
+     * Re-encrypts the values of the given batch which are not encrypted with the current cipher yet, decrypting each
+     * distinct value only once.
+     *
+     * @param values base64 encoded cipher texts, which may contain duplicates and null values.
+     * @return the re-encrypted values, keyed by their legacy cipher text.
+     * @throws CryptoException if a value cannot be decrypted or encrypted.
+     */
+    public Map<String, String> reEncryptAll(Collection<String> values) throws CryptoException {
+        Map<String, String> result = new HashMap<>();
+        for (String value : values) {
+            if (value != null && !result.containsKey(value) && !isNewlyEncrypted(value)) {
+                result.put(value, reEncrypt(value));
+            }
+        }
+        return result;
+    }
+
+    private byte[] decrypt(String value) throws CryptoException {
+        if (privateKey == null) {
+            return cryptoUtil.base64DecodeAndDecrypt(value, LEGACY_ALGORITHM);
+        }
+        try {
+            Cipher cipher = decryptionCiphers.get();
+            if (cipher == null) {
+                cipher = Cipher.getInstance(LEGACY_ALGORITHM, CRYPTO_PROVIDER);
+                cipher.init(Cipher.DECRYPT_MODE, privateKey);
+                decryptionCiphers.set(cipher);
+            }
+            return cipher.doFinal(Base64.decode(value));
+        } catch (GeneralSecurityException e) {
+            /* a failed cipher is not reused, as its state is unknown */
+            decryptionCiphers.remove();
+            throw new CryptoException("Error while decrypting the value with the legacy cipher", e);
+        }
+    }
+
+    private static CryptoUtil getCryptoUtil() throws DataMigrationException {
+        try {
+            return CryptoUtil.getDefaultCryptoUtil(CarbonCoreDataHolder.getInstance().getServerConfigurationService(),
+                    CarbonCoreDataHolder.getInstance().getRegistryService());
+        } catch (Exception e) {
+            throw new DataMigrationException("Error while initializing cryptoUtil", e);
+        }
+    }
+
+    /**
+     * The legacy values are decrypted with the primary key store private key, as does the crypto utility. If the key
+     * or the cipher cannot be resolved here, decryption is left to the crypto utility.
+     */
+    private static PrivateKey getPrivateKey() {
+        try {
+            PrivateKey privateKey = KeyStoreManager.getInstance(DataMigrationConstants.SUPER_TENANT_ID)
+                    .getDefaultPrivateKey();
+            Cipher.getInstance(LEGACY_ALGORITHM, CRYPTO_PROVIDER).init(Cipher.DECRYPT_MODE, privateKey);
+            return privateKey;
+        } catch (Exception e) {
+            log.warn("Unable to initialize the legacy cipher, legacy values will be decrypted by the crypto utility.",
+                    e);
+            return null;
+        }
+    }
+}
@@ -16,21 +16,14 @@
 
 package org.wso2.carbon.das.apimstats.sample;
 
-import org.wso2.carbon.databridge.agent.AgentHolder;
-import org.wso2.carbon.databridge.agent.DataPublisher;
-import org.wso2.carbon.databridge.agent.exception.DataEndpointAgentConfigurationException;
-import org.wso2.carbon.databridge.agent.exception.DataEndpointAuthenticationException;
-import org.wso2.carbon.databridge.agent.exception.DataEndpointConfigurationException;
-import org.wso2.carbon.databridge.agent.exception.DataEndpointException;
-import org.wso2.carbon.databridge.commons.Event;
-import org.wso2.carbon.databridge.commons.exception.TransportException;
+import org.wso2.carbon.das.sample.commons.PayloadWriter;
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.das.sample.commons.SampleAgentUtils;
 import org.wso2.carbon.databridge.commons.utils.DataBridgeCommonsUtils;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.net.*;
-import java.util.Enumeration;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class APIMStatsAgent {
@@ -44,7 +37,7 @@ public class APIMStatsAgent {
     private static final String[] RESOURCE_PATH = {"res1", "res2", "res3"};
     private static final String[] METHOD = {"GET", "POST", "PUT", "DELETE"};
     private static final String[] VERSION = {"1.0.1", "2.0.1", "3.0.1"};
-    private static final int[] REQUEST = {1, 10, 20, 500, 1000};
+    private static final Integer[] REQUEST = {1, 10, 20, 500, 1000};
     private static final String[] USER_ID = {"user1", "user2", "user3"};
     private static final String[] TENANT_DOMAIN = {"abc.com", "cde.lk", "maninda.us"};
     private static final String[] HOST_NAME = {"127.0.0.1", "127.0.0.2", "127.0.0.3", "127.0.0.4"};
@@ -54,199 +47,164 @@ public class APIMStatsAgent {
     private static final String[] USER_AGENT = {"ua1", "ua2", "ua3", "ua4", "ua5"};
     private static final String[] TIER = {"gold", "silver", "bronze", "unlimited"};
     private static final Random RANDOM_GEN = new Random();
+    static final int PAYLOAD_LENGTH = 17;
+
+    /**
+     * How long the shutdown hook waits, on top of the drain timeout of the harness, for the main thread to stop
+     * publishing and drain the publishers.
+     */
+    private static final long SHUTDOWN_MARGIN_MILLIS = 10000;
 
 
     private static final String SAMPLE_LOG_PATH = System.getProperty("user.dir") + "/resources/access.log";
-    private static final int defaultThriftPort = 7611;
-    private static final int defaultBinaryPort = 9611;
-
-    public static void main(String[] args) throws DataEndpointAuthenticationException,
-            DataEndpointAgentConfigurationException,
-            TransportException,
-            DataEndpointException,
-            DataEndpointConfigurationException,
-            FileNotFoundException,
-            SocketException,
-            UnknownHostException {
+
+    public static void main(String[] args) throws Exception {
         System.out.println("Starting APIM Statistics Agent");
         String currentDir = System.getProperty("user.dir");
         System.setProperty("javax.net.ssl.trustStore", "../../repository/resources/security/client-truststore.jks");
         System.setProperty("javax.net.ssl.trustStorePassword", "wso2carbon");
 
-        AgentHolder.setConfigPath(getDataAgentConfigPath());
-        String host = getLocalAddress().getHostAddress();
-
-        String type = getProperty("type", "Thrift");
-        int receiverPort = defaultThriftPort;
-        if (type.equals("Binary")) {
-            receiverPort = defaultBinaryPort;
-        }
-        int securePort = receiverPort + 100;
-
-        String url = getProperty("url", "tcp://" + host + ":" + receiverPort);
-        String authURL = getProperty("authURL", "ssl://" + host + ":" + securePort);
-        String username = getProperty("username", "admin");
-        String password = getProperty("password", "admin");
-
-        DataPublisher dataPublisher = new DataPublisher(type, url, authURL, username, password);
+        final PublisherHarness harness = PublisherHarness.fromSystemProperties("APIMStatsAgent");
 
         String streamId = DataBridgeCommonsUtils.generateStreamId(HTTPD_LOG_STREAM, STREAM_VERSION);
-        publishLogEvents(dataPublisher, streamId);
+        final TrafficSimulator simulator = "simulate".equals(SampleAgentUtils.getProperty("mode", "")) ?
+                createTrafficSimulator(harness, streamId) : null;
+        final AtomicBoolean stopping = new AtomicBoolean();
+        if (simulator == null || simulator.getDurationMillis() <= 0) {
+            final Thread publishThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    /*
+                     * the agent publishes until it is terminated, so it is stopped, and the main thread drains the
+                     * publishers once it no longer publishes, before the JVM exits
+                     */
+                    stopping.set(true);
+                    try {
+                        if (simulator != null) {
+                            simulator.stop();
+                        }
+                        publishThread.join(TimeUnit.SECONDS.toMillis(harness.getDrainTimeout()) +
+                                SHUTDOWN_MARGIN_MILLIS);
+                    } catch (InterruptedException ignored) {
+                        /* ignore */
+                    }
+                }
+            });
+        }
+        harness.start();
         try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
+            if (simulator != null) {
+                simulator.start();
+                /* a simulation without a duration is stopped by the shutdown hook */
+                simulator.awaitCompletion();
+                simulator.printReport();
+            } else {
+                publishLogEvents(harness, streamId, stopping);
+            }
+        } finally {
+            harness.shutdown();
         }
-
-        dataPublisher.shutdown();
     }
 
-    public static String getDataAgentConfigPath() {
-        File filePath = new File("src" + File.separator + "main" + File.separator + "resources");
-        if (!filePath.exists()) {
-            filePath = new File("test" + File.separator + "resources");
-        }
-        if (!filePath.exists()) {
-            filePath = new File("resources");
-        }
-        if (!filePath.exists()) {
-            filePath = new File("test" + File.separator + "resources");
+    private static TrafficSimulator createTrafficSimulator(PublisherHarness harness, String streamId) {
+        TrafficModel model = new TrafficModel(
+                Double.parseDouble(SampleAgentUtils.getProperty("rate", "1000")),
+                Double.parseDouble(SampleAgentUtils.getProperty("diurnalAmplitude", "0")),
+                Long.parseLong(SampleAgentUtils.getProperty("diurnalPeriod", "86400")),
+                Long.parseLong(SampleAgentUtils.getProperty("burstInterval", "0")),
+                Long.parseLong(SampleAgentUtils.getProperty("burstDuration", "5")),
+                Double.parseDouble(SampleAgentUtils.getProperty("burstFactor", "5")),
+                System.nanoTime());
+        int threads = Integer.parseInt(SampleAgentUtils.getProperty("threads", "4"));
+        long duration = Long.parseLong(SampleAgentUtils.getProperty("duration", "0"));
+        String[] apis = extendNames(API, "api", Integer.parseInt(SampleAgentUtils.getProperty("apis",
+                String.valueOf(API.length))));
+        String[] consumerKeys = extendNames(CONSUMER_KEY, "consumerKey", Integer.parseInt(
+                SampleAgentUtils.getProperty("consumerKeys", String.valueOf(CONSUMER_KEY.length))));
+        double zipfExponent = Double.parseDouble(SampleAgentUtils.getProperty("zipfExponent", "1.0"));
+        return new TrafficSimulator(harness, streamId, new Object[]{"external"}, threads, model, duration * 1000,
+                apis, consumerKeys, zipfExponent);
+    }
+
+    /**
+     * Returns the given number of names, starting with the given ones, and followed by generated ones if more are
+     * needed.
+     */
+    private static String[] extendNames(String[] names, String prefix, int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = i < names.length ? names[i] : prefix + (i + 1);
         }
-        return filePath.getAbsolutePath() + File.separator + "data-agent-conf.xml";
+        return result;
     }
 
-    private static void publishLogEvents(DataPublisher dataPublisher, String streamId) throws FileNotFoundException {
-        while (true) {
-            int i = 1;
-            while (i <= 10) {
-                Event event = new Event(streamId, System.currentTimeMillis(), new Object[]{"external"}, null, getPayloadData());
-                dataPublisher.publish(event);
-                i++;
-            }
-            System.out.println("Published 10 log events.");
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-            }
-        }
-    }
+    /**
+     * Publishes the log events until the given flag is set.
+     */
+    private static void publishLogEvents(PublisherHarness harness, String streamId, final AtomicBoolean stopping)
+            throws Exception {
+        harness.publishAll(streamId, new Object[]{"external"}, PAYLOAD_LENGTH, new PayloadWriter() {
+            private int published;
 
-    private static Object[] getPayloadData() {
-        return new Object[]{
-                getRandomConsumerKey(),
-                getRandomContext(),
-                getRandomAPIVersion(),
-                getRandomAPI(),
-                getRandomResourcePath(),
-                getRandomMethod(),
-                getRandomVersion(),
-                getRandomRequest(),
-                getRandomRequestTime(),
-                getRandomUserID(),
-                getRandomTenantDomain(),
-                getRandomHostName(),
-                getRandomAPIPublisher(),
-                getRandomAppName(),
-                getRandomAppID(),
-                getRandomUserAgent(),
-                getRandomTier()
-        };
+            @Override
+            public boolean writePayload(Object[] payload) throws InterruptedException {
+                /* publish in bursts of 10 events, every 2 seconds */
+                if (this.published > 0 && this.published % 10 == 0) {
+                    Thread.sleep(2000);
+                }
+                if (stopping.get()) {
+                    return false;
+                }
+                this.published++;
+                writePayloadData(payload);
+                return true;
+            }
+        }, Long.MAX_VALUE);
+    }
+
+    private static void writePayloadData(Object[] payload) {
+        writePayloadData(RANDOM_GEN, payload, getRandomConsumerKey(), getRandomAPI(), getRandomRequestTime());
+    }
+
+    /**
+     * Writes the payload of a request of the given API by the given consumer key, with the other values drawn at
+     * random from the given source.
+     */
+    static void writePayloadData(Random random, Object[] payload, String consumerKey, String api, long requestTime) {
+        payload[0] = consumerKey;
+        payload[1] = CONTEXT[random.nextInt(CONTEXT.length)];
+        payload[2] = API_VERSION[random.nextInt(API_VERSION.length)];
+        payload[3] = api;
+        payload[4] = RESOURCE_PATH[random.nextInt(RESOURCE_PATH.length)];
+        payload[5] = METHOD[random.nextInt(METHOD.length)];
+        payload[6] = VERSION[random.nextInt(VERSION.length)];
+        payload[7] = REQUEST[random.nextInt(REQUEST.length)];
+        payload[8] = requestTime;
+        payload[9] = USER_ID[random.nextInt(USER_ID.length)];
+        payload[10] = TENANT_DOMAIN[random.nextInt(TENANT_DOMAIN.length)];
+        payload[11] = HOST_NAME[random.nextInt(HOST_NAME.length)];
+        payload[12] = API_PUBLISHER[random.nextInt(API_PUBLISHER.length)];
+        payload[13] = APP_NAME[random.nextInt(APP_NAME.length)];
+        payload[14] = APP_ID[random.nextInt(APP_ID.length)];
+        payload[15] = USER_AGENT[random.nextInt(USER_AGENT.length)];
+        payload[16] = TIER[random.nextInt(TIER.length)];
     }
 
     private static String getRandomConsumerKey() {
         return CONSUMER_KEY[getRandomId(4)];
     }
 
-    private static String getRandomContext() {
-        return CONTEXT[getRandomId(3)];
-    }
-
-    private static String getRandomAPIVersion() {
-        return API_VERSION[getRandomId(3)];
-    }
-
     private static String getRandomAPI() {
         return API[getRandomId(5)];
     }
 
-    private static String getRandomResourcePath() {
-        return RESOURCE_PATH[getRandomId(3)];
-    }
-
-    private static String getRandomMethod() {
-        return METHOD[getRandomId(4)];
-    }
-
-    private static String getRandomVersion() {
-        return VERSION[getRandomId(3)];
-    }
-
-    private static int getRandomRequest() {
-        return REQUEST[getRandomId(5)];
-    }
-
     private static long getRandomRequestTime() {
         return System.currentTimeMillis() - 1;
     }
 
-    private static String getRandomUserID() {
-        return USER_ID[getRandomId(3)];
-    }
-
-    private static String getRandomTenantDomain() {
-        return TENANT_DOMAIN[getRandomId(3)];
-    }
-
-    private static String getRandomHostName() {
-        return HOST_NAME[getRandomId(4)];
-    }
-
-    private static String getRandomAPIPublisher() {
-        return API_PUBLISHER[getRandomId(5)];
-    }
-
-    private static String getRandomAppName() {
-        return APP_NAME[getRandomId(5)];
-    }
-
-    private static String getRandomAppID() {
-        return APP_ID[getRandomId(5)];
-    }
-
-    private static String getRandomUserAgent() {
-        return USER_AGENT[getRandomId(5)];
-    }
-
-    private static String getRandomTier() {
-        return TIER[getRandomId(4)];
-    }
-
     private static int getRandomId(int i) {
         return RANDOM_GEN.nextInt(i);
     }
 
-    public static InetAddress getLocalAddress() throws SocketException, UnknownHostException {
-        Enumeration<NetworkInterface> ifaces = NetworkInterface.getNetworkInterfaces();
-        while (ifaces.hasMoreElements()) {
-            NetworkInterface iface = ifaces.nextElement();
-            Enumeration<InetAddress> addresses = iface.getInetAddresses();
-
-            while (addresses.hasMoreElements()) {
-                InetAddress addr = addresses.nextElement();
-                if (addr instanceof Inet4Address && !addr.isLoopbackAddress()) {
-                    return addr;
-                }
-            }
-        }
-        return InetAddress.getLocalHost();
-    }
-
-
-    private static String getProperty(String name, String def) {
-        String result = System.getProperty(name);
-        if (result == null || result.length() == 0 || result == "") {
-            result = def;
-        }
-        return result;
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.apimstats.sample;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request rate of the simulated API gateway traffic over time, which is a base rate modulated by a diurnal curve, with
+ * injected bursts.
+ * <p/>
+ * The diurnal curve is a sine wave of the given amplitude, relative to the base rate, and period, which starts at the
+ * base rate and rises towards the daily peak. The period can be shortened from a day to compress a day of traffic into
+ * a test run. A burst multiplies the rate by the burst factor for the burst duration, once in every burst interval, at
+ * a random offset within the interval. The burst offsets are derived from the interval number and a seed, so that all
+ * the simulator threads see the same bursts without sharing any state.
+ */
+public class TrafficModel {
+
+    private final double baseRate;
+
+    private final double diurnalAmplitude;
+
+    private final long diurnalPeriodNanos;
+
+    private final long burstIntervalNanos;
+
+    private final long burstDurationNanos;
+
+    private final double burstFactor;
+
+    private final long seed;
+
+    /**
+     * @param baseRate         the mean rate in requests per second
+     * @param diurnalAmplitude the amplitude of the diurnal curve relative to the base rate, between 0 and 1
+     * @param diurnalPeriod    the period of the diurnal curve in seconds
+     * @param burstInterval    the interval between the starts of the bursts in seconds, 0 for no bursts
+     * @param burstDuration    the duration of a burst in seconds
+     * @param burstFactor      the factor a burst multiplies the rate by
+     * @param seed             the seed of the burst offsets
+     */
+    public TrafficModel(double baseRate, double diurnalAmplitude, long diurnalPeriod, long burstInterval,
+                        long burstDuration, double burstFactor, long seed) {
+        if (baseRate <= 0) {
+            throw new IllegalArgumentException("Request rate must be positive: " + baseRate);
+        }
+        if (diurnalAmplitude < 0 || diurnalAmplitude > 1) {
+            throw new IllegalArgumentException("Diurnal amplitude must be between 0 and 1: " + diurnalAmplitude);
+        }
+        if (burstInterval > 0 && (burstDuration > burstInterval || burstFactor < 1)) {
+            throw new IllegalArgumentException("Bursts must not be longer than their interval, and must not lower the " +
+                    "rate: duration " + burstDuration + ", interval " + burstInterval + ", factor " + burstFactor);
+        }
+        this.baseRate = baseRate;
+        this.diurnalAmplitude = diurnalAmplitude;
+        this.diurnalPeriodNanos = TimeUnit.SECONDS.toNanos(diurnalPeriod);
+        this.burstIntervalNanos = TimeUnit.SECONDS.toNanos(burstInterval);
+        this.burstDurationNanos = TimeUnit.SECONDS.toNanos(burstDuration);
+        this.burstFactor = burstFactor;
+        this.seed = seed;
+    }
+
+    public double getBaseRate() {
+        return this.baseRate;
+    }
+
+    /**
+     * Returns the highest rate of the model, which bounds {@link #getRate(long)}.
+     */
+    public double getPeakRate() {
+        return this.baseRate * (1 + this.diurnalAmplitude) * (this.burstIntervalNanos > 0 ? this.burstFactor : 1);
+    }
+
+    /**
+     * Returns the rate in requests per second at the given time since the start of the simulation.
+     */
+    public double getRate(long elapsedNanos) {
+        double rate = this.baseRate;
+        if (this.diurnalAmplitude > 0 && this.diurnalPeriodNanos > 0) {
+            double phase = (elapsedNanos % this.diurnalPeriodNanos) / (double) this.diurnalPeriodNanos;
+            rate *= 1 + this.diurnalAmplitude * Math.sin(2 * Math.PI * phase);
+        }
+        if (this.isInBurst(elapsedNanos)) {
+            rate *= this.burstFactor;
+        }
+        return rate;
+    }
+
+    public boolean isInBurst(long elapsedNanos) {
+        if (this.burstIntervalNanos <= 0) {
+            return false;
+        }
+        long interval = elapsedNanos / this.burstIntervalNanos;
+        long burstStart = (long) (this.burstOffset(interval) * (this.burstIntervalNanos - this.burstDurationNanos));
+        long offset = elapsedNanos - interval * this.burstIntervalNanos;
+        return offset >= burstStart && offset < burstStart + this.burstDurationNanos;
+    }
+
+    /**
+     * Returns the uniformly distributed offset, between 0 and 1, of the burst of the given interval.
+     */
+    private double burstOffset(long interval) {
+        /* the finalizer of SplitMix64 */
+        long z = this.seed + (interval + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) / (double) (1L << 53);
+    }
+
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.apimstats.sample;
+
+import org.wso2.carbon.das.sample.commons.LatencyHistogram;
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open loop simulation of API gateway traffic, which publishes API request statistics events at the rate of a
+ * {@link TrafficModel}, with the APIs and the consumer keys drawn from Zipf distributions.
+ * <p/>
+ * The requests arrive as a Poisson process, split over the simulator threads as independent Poisson processes of an
+ * equal share of the rate, whose superposition is again a Poisson process of the full rate. The rate changes over
+ * time are applied by thinning, i.e. the arrivals are generated at the peak rate of the model, and each of them is
+ * kept with the probability of the current rate over the peak rate.
+ * <p/>
+ * The arrival times are scheduled ahead, independently of how long the publishing takes, so when the receivers stall
+ * and the publishing blocks, the requests which should have been sent in the meantime are sent as soon as it resumes,
+ * instead of being silently skipped. Their response times are measured from their scheduled send times, so that the
+ * stall shows up in the reported percentiles rather than being hidden by coordinated omission. The request time of an
+ * event is its scheduled send time as well.
+ */
+public class TrafficSimulator {
+
+    private final PublisherHarness harness;
+
+    private final String streamId;
+
+    private final Object[] metaData;
+
+    private final int threadCount;
+
+    private final TrafficModel model;
+
+    private final long durationMillis;
+
+    private final String[] apis;
+
+    private final String[] consumerKeys;
+
+    private final ZipfSampler apiSampler;
+
+    private final ZipfSampler consumerKeySampler;
+
+    private final Simulator[] simulators;
+
+    private final Thread[] threads;
+
+    private volatile boolean stopped;
+
+    private long startNanos;
+
+    private long elapsedNanos;
+
+    /**
+     * @param durationMillis the duration of the simulation, 0 or less to simulate until {@link #stop()} is called
+     * @param apis           the APIs, from the most popular to the least popular one
+     * @param consumerKeys   the consumer keys, from the most active to the least active one
+     * @param zipfExponent   the exponent of the Zipf distributions of the APIs and the consumer keys
+     */
+    public TrafficSimulator(PublisherHarness harness, String streamId, Object[] metaData, int threadCount,
+                            TrafficModel model, long durationMillis, String[] apis, String[] consumerKeys,
+                            double zipfExponent) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.harness = harness;
+        this.streamId = streamId;
+        this.metaData = metaData;
+        this.threadCount = threadCount;
+        this.model = model;
+        this.durationMillis = durationMillis;
+        this.apis = apis;
+        this.consumerKeys = consumerKeys;
+        this.apiSampler = new ZipfSampler(apis.length, zipfExponent);
+        this.consumerKeySampler = new ZipfSampler(consumerKeys.length, zipfExponent);
+        this.simulators = new Simulator[threadCount];
+        this.threads = new Thread[threadCount];
+    }
+
+    public void start() {
+        this.startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        long deadlineNanos = this.startNanos + TimeUnit.MILLISECONDS.toNanos(this.durationMillis);
+        for (int i = 0; i < this.threadCount; i++) {
+            this.simulators[i] = new Simulator(startMillis, deadlineNanos);
+            this.threads[i] = new Thread(this.simulators[i], "APIMTrafficSimulator-" + i);
+            this.threads[i].start();
+        }
+    }
+
+    /**
+     * Waits for the simulation to end, either at the end of its duration or when it is stopped.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        for (Thread thread : this.threads) {
+            thread.join();
+        }
+        synchronized (this) {
+            if (this.elapsedNanos == 0) {
+                this.elapsedNanos = System.nanoTime() - this.startNanos;
+            }
+        }
+    }
+
+    /**
+     * Stops the simulation, and waits for the simulator threads to finish their requests in progress.
+     */
+    public void stop() throws InterruptedException {
+        this.stopped = true;
+        for (Thread thread : this.threads) {
+            LockSupport.unpark(thread);
+        }
+        this.awaitCompletion();
+    }
+
+    public long getDurationMillis() {
+        return this.durationMillis;
+    }
+
+    public long getPublishedCount() {
+        long published = 0;
+        for (Simulator simulator : this.simulators) {
+            published += simulator.published;
+        }
+        return published;
+    }
+
+    /**
+     * Returns the response times of the published requests, measured from their scheduled send times.
+     */
+    public LatencyHistogram getResponseTimes() {
+        LatencyHistogram responseTimes = new LatencyHistogram();
+        for (Simulator simulator : this.simulators) {
+            responseTimes.merge(simulator.responseTimes);
+        }
+        return responseTimes;
+    }
+
+    public void printReport() {
+        long published = this.getPublishedCount();
+        LatencyHistogram responseTimes = this.getResponseTimes();
+        System.out.println("Simulated " + published + " requests from " + this.threadCount + " thread(s) in " +
+                this.elapsedNanos / 1e9 + " seconds, base rate: " + this.model.getBaseRate() + ", peak rate: " +
+                this.model.getPeakRate() + ", achieved TPS: " +
+                (this.elapsedNanos == 0 ? 0 : published / (this.elapsedNanos / 1e9)));
+        System.out.println("Response time from the scheduled send time (us) - p50: " +
+                micros(responseTimes.getValueAtPercentile(50)) +
+                ", p90: " + micros(responseTimes.getValueAtPercentile(90)) +
+                ", p99: " + micros(responseTimes.getValueAtPercentile(99)) +
+                ", p99.9: " + micros(responseTimes.getValueAtPercentile(99.9)) +
+                ", max: " + micros(responseTimes.getMax()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * A simulator thread, which owns an equal share of the request rate.
+     */
+    private class Simulator implements Runnable {
+
+        private final long startMillis;
+
+        private final long deadlineNanos;
+
+        private final LatencyHistogram responseTimes = new LatencyHistogram();
+
+        private volatile long published;
+
+        private Simulator(long startMillis, long deadlineNanos) {
+            this.startMillis = startMillis;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void run() {
+            Random random = ThreadLocalRandom.current();
+            double peakRate = model.getPeakRate();
+            double meanGapNanos = threadCount * 1e9 / peakRate;
+            long scheduledNanos = startNanos;
+            while (!stopped) {
+                scheduledNanos += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+                if (durationMillis > 0 && scheduledNanos - this.deadlineNanos >= 0) {
+                    break;
+                }
+                if (random.nextDouble() * peakRate >= model.getRate(scheduledNanos - startNanos)) {
+                    continue;
+                }
+                long remaining;
+                while ((remaining = scheduledNanos - System.nanoTime()) > 0 && !stopped) {
+                    LockSupport.parkNanos(remaining);
+                }
+                if (stopped) {
+                    break;
+                }
+                Event event = harness.takeEvent(streamId, metaData, APIMStatsAgent.PAYLOAD_LENGTH);
+                APIMStatsAgent.writePayloadData(random, event.getPayloadData(),
+                        consumerKeys[consumerKeySampler.next(random)], apis[apiSampler.next(random)],
+                        this.startMillis + TimeUnit.NANOSECONDS.toMillis(scheduledNanos - startNanos));
+                harness.publish(event);
+                this.responseTimes.record(System.nanoTime() - scheduledNanos);
+                this.published++;
+            }
+        }
+
+    }
+
+}
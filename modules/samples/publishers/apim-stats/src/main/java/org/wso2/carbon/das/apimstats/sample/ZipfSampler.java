@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.apimstats.sample;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples ranks from a Zipf distribution, where the probability of the rank k, counted from 0, is proportional to
+ * 1 / (k + 1)^exponent, so that a few APIs and consumer keys take most of the traffic, as they do on a gateway.
+ */
+public class ZipfSampler {
+
+    private final double[] cumulativeProbabilities;
+
+    public ZipfSampler(int size, double exponent) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Zipf distribution size must be positive: " + size);
+        }
+        this.cumulativeProbabilities = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            this.cumulativeProbabilities[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            this.cumulativeProbabilities[i] /= sum;
+        }
+    }
+
+    public int size() {
+        return this.cumulativeProbabilities.length;
+    }
+
+    /**
+     * Returns a rank between 0, the most popular one, and {@link #size()} - 1.
+     */
+    public int next(Random random) {
+        int index = Arrays.binarySearch(this.cumulativeProbabilities, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, this.cumulativeProbabilities.length - 1);
+    }
+
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records published events to a directory of memory mapped segment files, to be replayed by {@link EventReplayer}.
+ * <p/>
+ * A segment is a sequence of records, each of them prefixed by its length, and ended by a zero length. A record is
+ * either the definition of a stream id, which assigns it the next stream index of the segment, or an event, which
+ * refers to its stream by that index. The records are written to the mapped segment file as they are recorded, so a
+ * recording of an agent which did not close it can still be replayed, up to the last record written. An event record
+ * holds the time it was recorded at, in nanoseconds since the start of the recording, the original timestamp of the
+ * event, and its meta, correlation and payload data, each value tagged with its type. A segment starts a new stream
+ * index table, so that each segment can be read on its own, and a new segment is started once a record does not fit
+ * into the current one.
+ */
+public class EventRecorder implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final String SEGMENT_FILE_PREFIX = "segment-";
+
+    static final String SEGMENT_FILE_SUFFIX = ".evt";
+
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    static final byte STREAM_RECORD = 1;
+
+    static final byte EVENT_RECORD = 2;
+
+    static final byte NULL_VALUE = 0;
+
+    static final byte STRING_VALUE = 1;
+
+    static final byte INT_VALUE = 2;
+
+    static final byte LONG_VALUE = 3;
+
+    static final byte FLOAT_VALUE = 4;
+
+    static final byte DOUBLE_VALUE = 5;
+
+    static final byte TRUE_VALUE = 6;
+
+    static final byte FALSE_VALUE = 7;
+
+    /**
+     * The length of an array of values which is null.
+     */
+    static final int NULL_ARRAY = -1;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String, Integer> streamIndexes = new HashMap<>();
+
+    private ByteBuffer record = ByteBuffer.allocate(4096);
+
+    private RandomAccessFile segmentFile;
+
+    private MappedByteBuffer segment;
+
+    private int segmentCount;
+
+    private long eventCount;
+
+    /**
+     * @param directory   the directory to write the segment files to, which is created if it does not exist
+     * @param segmentSize the size of a segment file in bytes
+     */
+    public EventRecorder(File directory, int segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the recording directory " + directory);
+        }
+        if (getSegmentFiles(directory).length > 0) {
+            throw new IOException("The recording directory " + directory + " already holds a recording");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns the segment files of the recording in the given directory, in their order.
+     */
+    static File[] getSegmentFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().startsWith(SEGMENT_FILE_PREFIX) && file.getName().endsWith(SEGMENT_FILE_SUFFIX)) {
+                segments.add(file);
+            }
+        }
+        File[] result = segments.toArray(new File[segments.size()]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    public long getEventCount() {
+        return this.eventCount;
+    }
+
+    /**
+     * Records the given event. Safe to be called by any number of threads, the events are recorded in the order of
+     * the calls.
+     */
+    public synchronized void record(Event event) throws IOException {
+        long offsetNanos = System.nanoTime() - this.startNanos;
+        this.encodeEvent(offsetNanos, event);
+        byte[] streamId = event.getStreamId().getBytes(CHARSET);
+        /* the length prefixes of the records, and the zero length which ends the segment */
+        int eventLength = 4 + this.record.position() + 4;
+        int streamLength = 4 + 1 + 4 + streamId.length;
+        Integer streamIndex = this.streamIndexes.get(event.getStreamId());
+        if (this.segment == null ||
+                this.segment.remaining() < eventLength + (streamIndex == null ? streamLength : 0)) {
+            if (eventLength + streamLength > this.segmentSize) {
+                throw new IOException("Event of " + (eventLength + streamLength) + " bytes does not fit into " +
+                        "segments of " + this.segmentSize + " bytes");
+            }
+            this.openSegment();
+            streamIndex = null;
+        }
+        if (streamIndex == null) {
+            streamIndex = this.streamIndexes.size();
+            this.streamIndexes.put(event.getStreamId(), streamIndex);
+            this.segment.putInt(1 + 4 + streamId.length);
+            this.segment.put(STREAM_RECORD);
+            this.segment.putInt(streamId.length);
+            this.segment.put(streamId);
+        }
+        this.record.putInt(1, streamIndex);
+        this.record.flip();
+        this.segment.putInt(this.record.remaining());
+        this.segment.put(this.record);
+        this.eventCount++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.closeSegment();
+    }
+
+    /**
+     * Encodes an event record, leaving its stream index to be filled in.
+     */
+    private void encodeEvent(long offsetNanos, Event event) throws IOException {
+        this.record.clear();
+        this.record.put(EVENT_RECORD);
+        this.record.putInt(0);
+        this.record.putLong(offsetNanos);
+        this.record.putLong(event.getTimeStamp());
+        this.putValues(event.getMetaData());
+        this.putValues(event.getCorrelationData());
+        this.putValues(event.getPayloadData());
+    }
+
+    private void openSegment() throws IOException {
+        this.closeSegment();
+        File file = new File(this.directory, String.format(Locale.ENGLISH, "%s%06d%s", SEGMENT_FILE_PREFIX,
+                this.segmentCount++, SEGMENT_FILE_SUFFIX));
+        this.segmentFile = new RandomAccessFile(file, "rw");
+        this.segment = this.segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        this.streamIndexes.clear();
+    }
+
+    private void closeSegment() throws IOException {
+        if (this.segment == null) {
+            return;
+        }
+        this.segment.putInt(0);
+        this.segment.force();
+        int length = this.segment.position();
+        this.segment = null;
+        try {
+            /* drop the unused tail of the mapping, the mapped buffer is not accessed any more */
+            this.segmentFile.getChannel().truncate(length);
+        } finally {
+            this.segmentFile.close();
+        }
+    }
+
+    private void putValues(Object[] values) throws IOException {
+        this.ensureCapacity(4);
+        if (values == null) {
+            this.record.putInt(NULL_ARRAY);
+            return;
+        }
+        this.record.putInt(values.length);
+        for (Object value : values) {
+            this.putValue(value);
+        }
+    }
+
+    private void putValue(Object value) throws IOException {
+        this.ensureCapacity(9);
+        if (value == null) {
+            this.record.put(NULL_VALUE);
+        } else if (value instanceof String) {
+            this.record.put(STRING_VALUE);
+            this.putString((String) value);
+        } else if (value instanceof Integer) {
+            this.record.put(INT_VALUE);
+            this.record.putInt((Integer) value);
+        } else if (value instanceof Long) {
+            this.record.put(LONG_VALUE);
+            this.record.putLong((Long) value);
+        } else if (value instanceof Float) {
+            this.record.put(FLOAT_VALUE);
+            this.record.putFloat((Float) value);
+        } else if (value instanceof Double) {
+            this.record.put(DOUBLE_VALUE);
+            this.record.putDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            this.record.put((Boolean) value ? TRUE_VALUE : FALSE_VALUE);
+        } else {
+            throw new IOException("Cannot record a value of type " + value.getClass().getName());
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(CHARSET);
+        this.ensureCapacity(4 + bytes.length);
+        this.record.putInt(bytes.length);
+        this.record.put(bytes);
+    }
+
+    private void ensureCapacity(int length) {
+        if (this.record.remaining() < length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(this.record.capacity() * 2,
+                    this.record.position() + length));
+            this.record.flip();
+            grown.put(this.record);
+            this.record = grown;
+        }
+    }
+
+}
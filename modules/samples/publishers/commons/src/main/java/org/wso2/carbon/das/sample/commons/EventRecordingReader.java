@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the events of a recording of {@link EventRecorder}, memory mapping one segment file at a time.
+ */
+public class EventRecordingReader implements Closeable {
+
+    private final File[] segmentFiles;
+
+    private final List<String> streamIds = new ArrayList<>();
+
+    private int nextSegment;
+
+    private MappedByteBuffer segment;
+
+    private long offsetNanos;
+
+    public EventRecordingReader(File directory) throws IOException {
+        this.segmentFiles = EventRecorder.getSegmentFiles(directory);
+        if (this.segmentFiles.length == 0) {
+            throw new IOException("No recording found in " + directory);
+        }
+    }
+
+    /**
+     * Returns the next event of the recording, with its original timestamp, or null at the end of the recording.
+     */
+    public Event next() throws IOException {
+        while (true) {
+            if (this.segment == null && !this.openNextSegment()) {
+                return null;
+            }
+            int length = this.segment.remaining() < 4 ? 0 : this.segment.getInt();
+            if (length == 0) {
+                this.segment = null;
+                continue;
+            }
+            if (length < 0 || length > this.segment.remaining()) {
+                throw new IOException("Corrupt record of " + length + " bytes in " +
+                        this.segmentFiles[this.nextSegment - 1]);
+            }
+            int end = this.segment.position() + length;
+            try {
+                byte type = this.segment.get();
+                if (type == EventRecorder.STREAM_RECORD) {
+                    this.streamIds.add(this.getString());
+                } else if (type == EventRecorder.EVENT_RECORD) {
+                    return this.getEvent();
+                } else {
+                    throw new IOException("Unknown record type " + type + " in " +
+                            this.segmentFiles[this.nextSegment - 1]);
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException("Truncated record in " + this.segmentFiles[this.nextSegment - 1], e);
+            } finally {
+                if (this.segment != null) {
+                    this.segment.position(end);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the time the last event returned by {@link #next()} was recorded at, in nanoseconds since the start of
+     * the recording.
+     */
+    public long getOffsetNanos() {
+        return this.offsetNanos;
+    }
+
+    @Override
+    public void close() {
+        this.segment = null;
+        this.nextSegment = this.segmentFiles.length;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        if (this.nextSegment == this.segmentFiles.length) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(this.segmentFiles[this.nextSegment++], "r")) {
+            /* the mapping stays valid after the file is closed */
+            this.segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        this.streamIds.clear();
+        return true;
+    }
+
+    private Event getEvent() throws IOException {
+        int streamIndex = this.segment.getInt();
+        if (streamIndex < 0 || streamIndex >= this.streamIds.size()) {
+            throw new IOException("Undefined stream index " + streamIndex + " in " +
+                    this.segmentFiles[this.nextSegment - 1]);
+        }
+        this.offsetNanos = this.segment.getLong();
+        long timestamp = this.segment.getLong();
+        Object[] metaData = this.getValues();
+        Object[] correlationData = this.getValues();
+        Object[] payloadData = this.getValues();
+        return new Event(this.streamIds.get(streamIndex), timestamp, metaData, correlationData, payloadData);
+    }
+
+    private Object[] getValues() throws IOException {
+        int length = this.segment.getInt();
+        if (length == EventRecorder.NULL_ARRAY) {
+            return null;
+        }
+        Object[] values = new Object[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = this.getValue();
+        }
+        return values;
+    }
+
+    private Object getValue() throws IOException {
+        byte type = this.segment.get();
+        switch (type) {
+            case EventRecorder.NULL_VALUE:
+                return null;
+            case EventRecorder.STRING_VALUE:
+                return this.getString();
+            case EventRecorder.INT_VALUE:
+                return this.segment.getInt();
+            case EventRecorder.LONG_VALUE:
+                return this.segment.getLong();
+            case EventRecorder.FLOAT_VALUE:
+                return this.segment.getFloat();
+            case EventRecorder.DOUBLE_VALUE:
+                return this.segment.getDouble();
+            case EventRecorder.TRUE_VALUE:
+                return Boolean.TRUE;
+            case EventRecorder.FALSE_VALUE:
+                return Boolean.FALSE;
+            default:
+                throw new IOException("Unknown value type " + type + " in " +
+                        this.segmentFiles[this.nextSegment - 1]);
+        }
+    }
+
+    private String getString() {
+        int length = this.segment.getInt();
+        byte[] bytes = new byte[length];
+        this.segment.get(bytes);
+        return new String(bytes, EventRecorder.CHARSET);
+    }
+
+}
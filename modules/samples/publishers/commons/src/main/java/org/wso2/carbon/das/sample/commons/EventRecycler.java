@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.util.Arrays;
+
+/**
+ * Recycles the events, and their payload arrays, of the publishing threads of a sample agent.
+ * <p/>
+ * The data publisher does not tell when it has sent an event, so an event is only handed out again once the thread has
+ * taken the given recycle distance of newer events. The distance is derived from the agent configuration so that it
+ * exceeds the number of events the publisher can hold at a time, i.e. its event queue plus the batches being sent, so
+ * by the time an event is reused the publisher no longer references it. That only holds for a single publisher sending
+ * to a single receiver, which blocks the publishing thread while it cannot send, as an event left in a stalled
+ * publisher, or failed over to another receiver, can outlive any number of newer events sent elsewhere. Each thread has
+ * its own ring of events, and it must publish every event it takes before taking the next one.
+ */
+public class EventRecycler {
+
+    private final int recycleDistance;
+
+    private final ThreadLocal<Ring> rings = new ThreadLocal<Ring>() {
+        @Override
+        protected Ring initialValue() {
+            return new Ring(recycleDistance);
+        }
+    };
+
+    public EventRecycler(int recycleDistance) {
+        if (recycleDistance < 1) {
+            throw new IllegalArgumentException("Recycle distance must be positive: " + recycleDistance);
+        }
+        this.recycleDistance = recycleDistance;
+    }
+
+    public int getRecycleDistance() {
+        return this.recycleDistance;
+    }
+
+    /**
+     * Takes an event of the calling thread, stamped with the current time, with a payload array of the given length
+     * to be filled in. Every other field of a reused event is reset, and its payload array is cleared.
+     */
+    public Event take(String streamId, Object[] metaData, int payloadLength) {
+        Ring ring = this.rings.get();
+        Event event = ring.events[ring.next];
+        if (event == null || event.getPayloadData().length != payloadLength) {
+            event = new Event(streamId, System.currentTimeMillis(), metaData, null, new Object[payloadLength]);
+            ring.events[ring.next] = event;
+        } else {
+            event.setStreamId(streamId);
+            event.setTimeStamp(System.currentTimeMillis());
+            event.setMetaData(metaData);
+            event.setCorrelationData(null);
+            event.setArbitraryDataMap(null);
+            Arrays.fill(event.getPayloadData(), null);
+        }
+        ring.next = ring.next + 1 == ring.events.length ? 0 : ring.next + 1;
+        return event;
+    }
+
+    /**
+     * The events of a thread, the next one to be taken being the oldest one.
+     */
+    private static class Ring {
+
+        private final Event[] events;
+
+        private int next;
+
+        private Ring(int size) {
+            this.events = new Event[size];
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recording of {@link EventRecorder} through a {@link PublisherHarness}, e.g. to run the events of an
+ * incident again against a staging server.
+ * <p/>
+ * The events are published in the order they were recorded, with their original timestamps, and by default with the
+ * time between them as it was recorded. The time between them can be divided by a speed factor, dropped altogether
+ * to publish as fast as the receivers accept the events, or replaced by a fixed rate. The send times are scheduled
+ * from the start of the replay, so a replay which falls behind catches up instead of drifting.
+ */
+public class EventReplayer {
+
+    /**
+     * The speed to replay at as fast as possible.
+     */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private final PublisherHarness harness;
+
+    private final File directory;
+
+    private final double speed;
+
+    private final double eventsPerSecond;
+
+    /**
+     * @param speed           the factor to divide the recorded time between the events by, or {@link #MAX_SPEED}
+     * @param eventsPerSecond the fixed rate to replay at, or 0 or less to replay at the given speed
+     */
+    public EventReplayer(PublisherHarness harness, File directory, double speed, double eventsPerSecond) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive: " + speed);
+        }
+        this.harness = harness;
+        this.directory = directory;
+        this.speed = speed;
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("javax.net.ssl.trustStore", "../../repository/resources/security/client-truststore.jks");
+        System.setProperty("javax.net.ssl.trustStorePassword", "wso2carbon");
+        String directory = SampleAgentUtils.getProperty("replay", null);
+        if (directory == null) {
+            throw new IllegalArgumentException("The recording directory to replay is not given with -Dreplay=<dir>");
+        }
+        String speed = SampleAgentUtils.getProperty("speed", "1");
+        double eventsPerSecond = Double.parseDouble(SampleAgentUtils.getProperty("rate", "0"));
+        PublisherHarness harness = PublisherHarness.fromSystemProperties("EventReplayer");
+        EventReplayer replayer = new EventReplayer(harness, new File(directory),
+                "max".equalsIgnoreCase(speed) ? MAX_SPEED : Double.parseDouble(speed), eventsPerSecond);
+        harness.start();
+        long startNanos = System.nanoTime();
+        long replayed = replayer.replay();
+        System.out.println("Replayed " + replayed + " events from " + directory + " in " +
+                (System.nanoTime() - startNanos) / 1e9 + " seconds");
+        harness.shutdown();
+    }
+
+    /**
+     * Publishes the events of the recording on the calling thread, and returns the number of events published.
+     */
+    public long replay() throws IOException {
+        long replayed = 0;
+        long startNanos = System.nanoTime();
+        long firstOffsetNanos = -1;
+        try (EventRecordingReader reader = new EventRecordingReader(this.directory)) {
+            Event event;
+            while ((event = reader.next()) != null) {
+                long sendNanos;
+                if (this.eventsPerSecond > 0) {
+                    sendNanos = startNanos + (long) (replayed * 1e9 / this.eventsPerSecond);
+                } else if (this.speed != MAX_SPEED) {
+                    if (firstOffsetNanos < 0) {
+                        firstOffsetNanos = reader.getOffsetNanos();
+                    }
+                    sendNanos = startNanos + (long) ((reader.getOffsetNanos() - firstOffsetNanos) / this.speed);
+                } else {
+                    sendNanos = startNanos;
+                }
+                long remaining;
+                while ((remaining = sendNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                this.harness.publish(event);
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds, with 16 sub-buckets per power of two, i.e. values are recorded
+ * with a relative error of about 6%. Recording does not allocate, and an instance is meant to be owned by a single
+ * thread, with per thread histograms merged for reporting.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+
+    private long totalCount;
+
+    private long max;
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        this.counts[bucketOf(nanos)]++;
+        this.totalCount++;
+        if (nanos > this.max) {
+            this.max = nanos;
+        }
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram result = new LatencyHistogram();
+        result.merge(this);
+        return result;
+    }
+
+    /**
+     * Returns the latencies recorded since the given earlier copy of this histogram. The maximum of the difference is
+     * the upper bound of its highest bucket, unless that is the overall maximum.
+     */
+    public LatencyHistogram since(LatencyHistogram earlier) {
+        LatencyHistogram result = new LatencyHistogram();
+        for (int i = 0; i < this.counts.length; i++) {
+            long count = this.counts[i] - earlier.counts[i];
+            if (count > 0) {
+                result.counts[i] = count;
+                result.totalCount += count;
+                result.max = Math.min(upperBoundOf(i), this.max);
+            }
+        }
+        return result;
+    }
+
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Returns the latency at the given percentile, as the upper bound of the bucket it falls in.
+     *
+     * @param percentile the percentile, between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * this.totalCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
@@ -0,0 +1,384 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import org.apache.axiom.util.base64.Base64Utils;
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long the published events take to become queryable, by probing the analytics table the events of a
+ * stream are persisted to.
+ * <p/>
+ * Once in every probe interval, the {@link PublisherHarness} lets the probe stamp the event it is about to publish,
+ * which adds an arbitrary attribute named {@link #PROBE_ATTRIBUTE} to the event, holding a token unique to the probe,
+ * and notes its send time. The data of the event, its timestamp included, is left as it is, the attribute only being
+ * persisted as the extra "_probe" column of its record. The probe thread knows the event has been persisted once the
+ * analytics REST API returns a record of the timestamp of the event holding the token, and that it has been indexed
+ * once a search of that timestamp returns such a record. The timestamp only narrows down the records to look at, which
+ * is what keeps the polls cheap, while the token tells the probe record apart from the others of the same millisecond.
+ * The latencies are measured from the send times to the first polls which see the records, so they have the
+ * resolution of the poll interval.
+ * <p/>
+ * The table of a probe is the one of the stream of its event, unless one is given.
+ */
+public class LatencyProbe {
+
+    public static final String DEFAULT_ANALYTICS_URL = "https://localhost:9443/analytics";
+
+    public static final long DEFAULT_PROBE_INTERVAL = 1000;
+
+    public static final long DEFAULT_POLL_INTERVAL = 100;
+
+    public static final long DEFAULT_PROBE_TIMEOUT = 120;
+
+    /**
+     * The name of the arbitrary attribute which marks a probe event.
+     */
+    public static final String PROBE_ATTRIBUTE = "probe";
+
+    private final String analyticsURL;
+
+    private final String tableName;
+
+    private final String authorization;
+
+    private final long probeIntervalMillis;
+
+    private final long pollIntervalMillis;
+
+    private final long timeoutNanos;
+
+    private final String tokenPrefix = "das-sample-probe-" + UUID.randomUUID() + "-";
+
+    private final AtomicLong nextProbeMillis = new AtomicLong();
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private final Queue<Probe> sentProbes = new ConcurrentLinkedQueue<>();
+
+    private final LatencyHistogram persistLatencies = new LatencyHistogram();
+
+    private final LatencyHistogram indexLatencies = new LatencyHistogram();
+
+    private Thread poller;
+
+    private volatile boolean stopping;
+
+    private long unpersistedCount;
+
+    private long unindexedCount;
+
+    private long pollErrorCount;
+
+    private String lastPollError;
+
+    /**
+     * @param analyticsURL        the base URL of the analytics REST API
+     * @param tableName           the table to probe, or null for the table of the stream of each probe
+     * @param probeIntervalMillis the interval between the probes in milliseconds, at least 1
+     * @param pollIntervalMillis  the interval between the polls of the table in milliseconds
+     * @param timeoutSeconds      how long a probe is polled for before it is given up on
+     */
+    public LatencyProbe(String analyticsURL, String tableName, String username, String password,
+                        long probeIntervalMillis, long pollIntervalMillis, long timeoutSeconds) {
+        if (probeIntervalMillis < 1) {
+            throw new IllegalArgumentException("Probe interval must be at least 1 millisecond: " +
+                    probeIntervalMillis);
+        }
+        this.analyticsURL = analyticsURL.endsWith("/") ? analyticsURL.substring(0, analyticsURL.length() - 1) :
+                analyticsURL;
+        this.tableName = tableName;
+        this.authorization = "Basic " + Base64Utils.encode(
+                (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.probeIntervalMillis = probeIntervalMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    }
+
+    /**
+     * Creates a probe configured with the "probeURL", "probeTable", "probeInterval", "probePollInterval",
+     * "probeTimeout", "username" and "password" system properties.
+     */
+    public static LatencyProbe fromSystemProperties() {
+        return new LatencyProbe(SampleAgentUtils.getProperty("probeURL", DEFAULT_ANALYTICS_URL),
+                SampleAgentUtils.getProperty("probeTable", null),
+                SampleAgentUtils.getProperty("username", "admin"),
+                SampleAgentUtils.getProperty("password", "admin"),
+                Long.parseLong(SampleAgentUtils.getProperty("probeInterval", String.valueOf(DEFAULT_PROBE_INTERVAL))),
+                Long.parseLong(SampleAgentUtils.getProperty("probePollInterval",
+                        String.valueOf(DEFAULT_POLL_INTERVAL))),
+                Long.parseLong(SampleAgentUtils.getProperty("probeTimeout", String.valueOf(DEFAULT_PROBE_TIMEOUT))));
+    }
+
+    /**
+     * Returns the analytics table the events of the given stream are persisted to, e.g. ORG_WSO2_SAMPLE for the
+     * stream org.wso2.sample:1.0.0.
+     */
+    public static String toTableName(String streamId) {
+        int versionSeparator = streamId.indexOf(':');
+        String streamName = versionSeparator < 0 ? streamId : streamId.substring(0, versionSeparator);
+        return streamName.replace('.', '_').toUpperCase();
+    }
+
+    public void start() {
+        this.poller = new Thread("LatencyProbePoller") {
+            @Override
+            public void run() {
+                poll();
+            }
+        };
+        this.poller.setDaemon(true);
+        this.poller.start();
+        System.out.println("Probing the latency to the analytics tables at " + this.analyticsURL + " every " +
+                this.probeIntervalMillis + " ms");
+    }
+
+    /**
+     * Marks the given event as a probe if a probe is due, and returns whether it did. The event is to be published
+     * right after.
+     */
+    public boolean stamp(Event event) {
+        long now = System.currentTimeMillis();
+        long next = this.nextProbeMillis.get();
+        if (now < next || this.stopping || !this.nextProbeMillis.compareAndSet(next, now + this.probeIntervalMillis)) {
+            return false;
+        }
+        String token = this.tokenPrefix + this.nextSequence.getAndIncrement();
+        /* the map of the event may be shared with other events, so it is copied rather than added to */
+        Map<String, String> arbitraryData = event.getArbitraryDataMap() == null ? new HashMap<String, String>() :
+                new HashMap<>(event.getArbitraryDataMap());
+        arbitraryData.put(PROBE_ATTRIBUTE, token);
+        event.setArbitraryDataMap(arbitraryData);
+        String table = this.tableName != null ? this.tableName : toTableName(event.getStreamId());
+        this.sentProbes.add(new Probe(table, event.getTimeStamp(), token, System.nanoTime()));
+        return true;
+    }
+
+    /**
+     * Stops probing, waits for the probes sent to be persisted and indexed, or to time out, and prints the latencies.
+     * To be called once the events have been published.
+     */
+    public void stop() throws InterruptedException {
+        this.stopping = true;
+        if (this.poller != null) {
+            this.poller.join();
+        }
+        this.printReport();
+    }
+
+    public LatencyHistogram getPersistLatencies() {
+        return this.persistLatencies;
+    }
+
+    public LatencyHistogram getIndexLatencies() {
+        return this.indexLatencies;
+    }
+
+    private void poll() {
+        List<Probe> probes = new ArrayList<>();
+        while (true) {
+            boolean stopped = this.stopping;
+            Probe sent;
+            while ((sent = this.sentProbes.poll()) != null) {
+                probes.add(sent);
+            }
+            if (stopped && probes.isEmpty()) {
+                return;
+            }
+            for (Iterator<Probe> iterator = probes.iterator(); iterator.hasNext(); ) {
+                Probe probe = iterator.next();
+                try {
+                    if (this.isDone(probe)) {
+                        iterator.remove();
+                        continue;
+                    }
+                } catch (IOException e) {
+                    this.pollErrorCount++;
+                    this.lastPollError = e.getMessage();
+                }
+                if (System.nanoTime() - probe.sentNanos > this.timeoutNanos) {
+                    if (probe.persistedNanos == 0) {
+                        this.unpersistedCount++;
+                    } else {
+                        this.unindexedCount++;
+                    }
+                    iterator.remove();
+                }
+            }
+            try {
+                Thread.sleep(this.pollIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Polls the table for the given probe, and returns whether it has been both persisted and indexed.
+     */
+    private boolean isDone(Probe probe) throws IOException {
+        if (probe.persistedNanos == 0) {
+            if (!this.isPersisted(probe)) {
+                return false;
+            }
+            probe.persistedNanos = System.nanoTime();
+            this.persistLatencies.record(probe.persistedNanos - probe.sentNanos);
+        }
+        if (!this.isIndexed(probe)) {
+            return false;
+        }
+        this.indexLatencies.record(System.nanoTime() - probe.sentNanos);
+        return true;
+    }
+
+    private boolean isPersisted(Probe probe) throws IOException {
+        String records = this.request("GET", this.analyticsURL + "/tables/" + probe.table + "/" + probe.timestamp +
+                "/" + (probe.timestamp + 1), null);
+        return probe.isIn(records);
+    }
+
+    /**
+     * Searches the records of the timestamp of the given probe, all of which are fetched once they have been counted,
+     * for the probe record.
+     */
+    private boolean isIndexed(Probe probe) throws IOException {
+        String search = "\"tableName\":\"" + probe.table + "\",\"query\":\"_timestamp:[" + probe.timestamp + " TO " +
+                probe.timestamp + "]\"";
+        String count = this.request("POST", this.analyticsURL + "/search_count", "{" + search + "}");
+        long recordCount;
+        try {
+            recordCount = (long) Double.parseDouble(count.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected search count response: " + count);
+        }
+        if (recordCount == 0) {
+            return false;
+        }
+        String records = this.request("POST", this.analyticsURL + "/search", "{" + search + ",\"start\":0,\"count\":" +
+                recordCount + "}");
+        return probe.isIn(records);
+    }
+
+    private String request(String method, String url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod(method);
+            connection.setRequestProperty("Authorization", this.authorization);
+            connection.setRequestProperty("Accept", "application/json");
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException(method + " " + url + " returned HTTP status " + status);
+            }
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    response.write(buffer, 0, read);
+                }
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void printReport() {
+        System.out.println("Probed " + this.nextSequence.get() + " event(s) - publish to persist latency (ms) " +
+                formatLatencies(this.persistLatencies) + ", publish to index latency (ms) " +
+                formatLatencies(this.indexLatencies));
+        if (this.unpersistedCount > 0 || this.unindexedCount > 0) {
+            System.out.println("Probes timed out: " + this.unpersistedCount + " not persisted, " +
+                    this.unindexedCount + " persisted but not indexed");
+        }
+        if (this.pollErrorCount > 0) {
+            System.out.println(this.pollErrorCount + " poll(s) of the analytics tables failed, the last one with: " +
+                    this.lastPollError);
+        }
+    }
+
+    private static String formatLatencies(LatencyHistogram latencies) {
+        if (latencies.getTotalCount() == 0) {
+            return "- none";
+        }
+        return "- p50: " + millis(latencies.getValueAtPercentile(50)) +
+                ", p90: " + millis(latencies.getValueAtPercentile(90)) +
+                ", p99: " + millis(latencies.getValueAtPercentile(99)) +
+                ", max: " + millis(latencies.getMax());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * A probe event, identified by its token, and looked up by its table and timestamp.
+     */
+    private static class Probe {
+
+        private final String table;
+
+        private final long timestamp;
+
+        private final String token;
+
+        private final long sentNanos;
+
+        private long persistedNanos;
+
+        private Probe(String table, long timestamp, String token, long sentNanos) {
+            this.table = table;
+            this.timestamp = timestamp;
+            this.token = token;
+            this.sentNanos = sentNanos;
+        }
+
+        /**
+         * Returns whether the given JSON records hold the probe record, i.e. a value which is the token of the probe.
+         */
+        private boolean isIn(String records) {
+            return records.contains("\"" + this.token + "\"");
+        }
+
+    }
+
+}
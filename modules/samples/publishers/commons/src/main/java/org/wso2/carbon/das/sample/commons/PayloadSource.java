@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+/**
+ * Source of the event payloads of a sample agent, which is drained by {@link PublisherHarness#publishAll}.
+ */
+public interface PayloadSource {
+
+    /**
+     * Returns the payload of the next event, blocking if the source paces its events.
+     *
+     * @return the payload, or null if the source is exhausted
+     */
+    Object[] nextPayload() throws Exception;
+
+}
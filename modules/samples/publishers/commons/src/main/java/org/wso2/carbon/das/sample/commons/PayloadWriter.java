@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+/**
+ * Source of event payloads which writes the values of each payload into a given array, so that the arrays can be
+ * recycled by {@link PublisherHarness#publishAll(String, Object[], int, PayloadWriter, long)}.
+ */
+public interface PayloadWriter {
+
+    /**
+     * Writes the payload of the next event into the given array, blocking if the source paces its events.
+     *
+     * @param payload the array to write the payload values into, all of them are to be overwritten
+     * @return false if the source is exhausted, in which case nothing is written
+     */
+    boolean writePayload(Object[] payload) throws Exception;
+
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import org.wso2.carbon.databridge.agent.AgentHolder;
+import org.wso2.carbon.databridge.agent.DataPublisher;
+import org.wso2.carbon.databridge.agent.exception.DataEndpointAgentConfigurationException;
+import org.wso2.carbon.databridge.agent.exception.DataEndpointAuthenticationException;
+import org.wso2.carbon.databridge.agent.exception.DataEndpointConfigurationException;
+import org.wso2.carbon.databridge.agent.exception.DataEndpointException;
+import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.databridge.commons.exception.TransportException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Publishing harness shared by the sample agents, which owns the data publishers, the back-pressure handling and the
+ * {@link PublisherMetrics} of a run.
+ * <p/>
+ * The events are published through a pool of {@link DataPublisher}s, sized with the "publishers" system property,
+ * and spread over the receiver groups given in the "url" system property separated by ';'. Each publishing thread
+ * sticks to one publisher of the pool, so the threads do not contend on a single event queue. An event is offered
+ * with {@link DataPublisher#tryPublish(Event)}, and while the queue of the publisher is full, it is offered to the
+ * next publishers of the pool, backing off between the rounds, up to the "publishRetries" system property times.
+ * After that, the thread blocks in {@link DataPublisher#publish(Event)}, so a source is throttled to the rate the
+ * receivers accept instead of dropping events.
+ * <p/>
+ * With the "recycleEvents" system property set to true, the events published with
+ * {@link #publishAll(String, Object[], int, PayloadWriter, long)} and taken with
+ * {@link #takeEvent(String, Object[], int)} are recycled by an {@link EventRecycler}, along with their payload arrays,
+ * once the publisher can no longer hold them. That is after its event queue and in flight batches, as configured for
+ * the agent type in data-agent-conf.xml, have been refilled twice, unless the "recycleDistance" system property says
+ * otherwise. As the publisher does not confirm when it has sent an event, recycling is limited to a single publisher
+ * of a single receiver URL, with no load balancing or failover, which holds the publishing thread while it cannot send
+ * instead of letting it go on with another publisher or receiver past an event it still references.
+ * <p/>
+ * With the "record" system property set to a directory, the published events are recorded to it by an
+ * {@link EventRecorder}, in segments of the "recordSegmentSize" system property megabytes, to be replayed later with
+ * {@link EventReplayer}.
+ * <p/>
+ * With the "probe" system property set to true, a {@link LatencyProbe} measures how long the published events take to
+ * be persisted and indexed in the analytics tables.
+ * <p/>
+ * On {@link #shutdown()}, the publishers are shut down in parallel, which sends out the events still in their queues,
+ * waiting up to the "drainTimeout" system property seconds for them to finish.
+ */
+public class PublisherHarness {
+
+    public static final int DEFAULT_THRIFT_PORT = 7611;
+
+    public static final int DEFAULT_BINARY_PORT = 9611;
+
+    /**
+     * The secure (authentication) port of a receiver is its port plus this offset.
+     */
+    public static final int SECURE_PORT_OFFSET = 100;
+
+    public static final int DEFAULT_PUBLISH_RETRIES = 10;
+
+    public static final int DEFAULT_DRAIN_TIMEOUT = 30;
+
+    /**
+     * The agent configuration defaults of the data bridge, used for the values missing in data-agent-conf.xml.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 32768;
+
+    private static final int DEFAULT_BATCH_SIZE = 200;
+
+    private static final int DEFAULT_MAX_POOL_SIZE = 10;
+
+    /**
+     * How many times the events the publisher can hold at a time are published before an event is recycled.
+     */
+    private static final int RECYCLE_MARGIN = 2;
+
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final Pattern RECEIVER_URL = Pattern.compile("tcp://([^:/]+):(\\d+)");
+
+    private final DataPublisher[] publishers;
+
+    private final int publishRetries;
+
+    private final int drainTimeout;
+
+    private final PublisherMetrics metrics;
+
+    private final EventRecycler recycler;
+
+    private LatencyProbe latencyProbe;
+
+    private EventRecorder recorder;
+
+    private volatile boolean recording;
+
+    private final AtomicInteger nextPublisher = new AtomicInteger();
+
+    private final ThreadLocal<int[]> threadPublisher = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] { (nextPublisher.getAndIncrement() & Integer.MAX_VALUE) % publishers.length };
+        }
+    };
+
+    private final StripedCounter retries = new StripedCounter();
+
+    private final StripedCounter blockingPublishes = new StripedCounter();
+
+    public PublisherHarness(DataPublisher[] publishers, int publishRetries, int drainTimeout,
+                            PublisherMetrics metrics) {
+        this(publishers, publishRetries, drainTimeout, metrics, null);
+    }
+
+    /**
+     * @param recycler the recycler of the published events, or null to publish a new event each time
+     */
+    public PublisherHarness(DataPublisher[] publishers, int publishRetries, int drainTimeout,
+                            PublisherMetrics metrics, EventRecycler recycler) {
+        if (publishers.length == 0) {
+            throw new IllegalArgumentException("At least one data publisher is required");
+        }
+        if (recycler != null && publishers.length != 1) {
+            throw new IllegalArgumentException("Events can only be recycled with a single data publisher, not " +
+                    publishers.length);
+        }
+        this.publishers = publishers;
+        this.publishRetries = publishRetries;
+        this.drainTimeout = drainTimeout;
+        this.metrics = metrics;
+        this.recycler = recycler;
+    }
+
+    /**
+     * Creates a harness configured with the system properties of the sample agents, i.e. "type", "url", "authURL",
+     * "username", "password", "publishers", "publishRetries", "drainTimeout", "recycleEvents", "recycleDistance",
+     * "record", "recordSegmentSize", "probe", and the ones of {@link PublisherMetrics#fromSystemProperties(String)} and
+     * {@link LatencyProbe#fromSystemProperties()}.
+     *
+     * @param name the name of the agent, which the metrics are labeled with
+     */
+    public static PublisherHarness fromSystemProperties(String name) throws DataEndpointAgentConfigurationException,
+            DataEndpointException, DataEndpointConfigurationException, DataEndpointAuthenticationException,
+            TransportException, IOException {
+        AgentHolder.setConfigPath(SampleAgentUtils.getDataAgentConfigPath());
+        String type = SampleAgentUtils.getProperty("type", "Thrift");
+        String host = SampleAgentUtils.getLocalAddress().getHostAddress();
+        int receiverPort = type.equals("Binary") ? DEFAULT_BINARY_PORT : DEFAULT_THRIFT_PORT;
+        String[] urls = SampleAgentUtils.getProperty("url", "tcp://" + host + ":" + receiverPort).split(";");
+        String authURLProperty = SampleAgentUtils.getProperty("authURL", null);
+        String[] authURLs = authURLProperty == null ? null : authURLProperty.split(";");
+        if (authURLs != null && authURLs.length != 1 && authURLs.length != urls.length) {
+            throw new DataEndpointConfigurationException("The number of authentication URL groups " + authURLs.length +
+                    " does not match the number of receiver URL groups " + urls.length);
+        }
+        String username = SampleAgentUtils.getProperty("username", "admin");
+        String password = SampleAgentUtils.getProperty("password", "admin");
+        int publisherCount = Math.max(urls.length, Integer.parseInt(SampleAgentUtils.getProperty("publishers", "1")));
+        DataPublisher[] publishers = new DataPublisher[publisherCount];
+        for (int i = 0; i < publisherCount; i++) {
+            int group = i % urls.length;
+            String url = urls[group].trim();
+            String authURL;
+            if (authURLs == null) {
+                authURL = toAuthURL(url, "ssl://" + host + ":" + (receiverPort + SECURE_PORT_OFFSET));
+            } else {
+                authURL = authURLs[authURLs.length == 1 ? 0 : group].trim();
+            }
+            publishers[i] = new DataPublisher(type, url, authURL, username, password);
+        }
+        int publishRetries = Integer.parseInt(SampleAgentUtils.getProperty("publishRetries",
+                String.valueOf(DEFAULT_PUBLISH_RETRIES)));
+        int drainTimeout = Integer.parseInt(SampleAgentUtils.getProperty("drainTimeout",
+                String.valueOf(DEFAULT_DRAIN_TIMEOUT)));
+        EventRecycler recycler = null;
+        if (Boolean.parseBoolean(SampleAgentUtils.getProperty("recycleEvents", "false"))) {
+            if (publisherCount != 1 || urls[0].indexOf(',') >= 0 || urls[0].indexOf('|') >= 0) {
+                throw new DataEndpointConfigurationException("Events can only be recycled with a single data " +
+                        "publisher of a single receiver URL, not " + publisherCount + " publisher(s) of " +
+                        SampleAgentUtils.getProperty("url", urls[0]));
+            }
+            String recycleDistance = SampleAgentUtils.getProperty("recycleDistance", null);
+            recycler = new EventRecycler(recycleDistance == null ? getRecycleDistance(type) :
+                    Integer.parseInt(recycleDistance));
+        }
+        PublisherHarness harness = new PublisherHarness(publishers, publishRetries, drainTimeout,
+                PublisherMetrics.fromSystemProperties(name), recycler);
+        String recordDirectory = SampleAgentUtils.getProperty("record", null);
+        if (recordDirectory != null) {
+            int segmentSize = Integer.parseInt(SampleAgentUtils.getProperty("recordSegmentSize",
+                    String.valueOf(EventRecorder.DEFAULT_SEGMENT_SIZE >> 20)));
+            harness.setEventRecorder(new EventRecorder(new File(recordDirectory), segmentSize << 20));
+        }
+        if (Boolean.parseBoolean(SampleAgentUtils.getProperty("probe", "false"))) {
+            harness.setLatencyProbe(LatencyProbe.fromSystemProperties());
+        }
+        return harness;
+    }
+
+    /**
+     * Returns the number of events a thread has to publish before it can recycle an event, that is the events a
+     * publisher of the given agent type can hold at a time, in its queue and in the batches taken by its worker
+     * threads, times {@link #RECYCLE_MARGIN}.
+     */
+    private static int getRecycleDistance(String type) {
+        String configPath = SampleAgentUtils.getDataAgentConfigPath();
+        long queueSize = SampleAgentUtils.getAgentConfigValue(configPath, type, "QueueSize", DEFAULT_QUEUE_SIZE);
+        long batchSize = SampleAgentUtils.getAgentConfigValue(configPath, type, "BatchSize", DEFAULT_BATCH_SIZE);
+        long maxPoolSize = SampleAgentUtils.getAgentConfigValue(configPath, type, "MaxPoolSize",
+                DEFAULT_MAX_POOL_SIZE);
+        long distance = RECYCLE_MARGIN * (queueSize + batchSize * maxPoolSize);
+        return (int) Math.min(distance, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Derives the authentication URL of a plain "tcp://host:port" receiver URL, or returns the given default for the
+     * other receiver URL formats.
+     */
+    private static String toAuthURL(String url, String def) {
+        Matcher matcher = RECEIVER_URL.matcher(url);
+        if (!matcher.matches()) {
+            return def;
+        }
+        return "ssl://" + matcher.group(1) + ":" + (Integer.parseInt(matcher.group(2)) + SECURE_PORT_OFFSET);
+    }
+
+    public PublisherMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public int getPublisherCount() {
+        return this.publishers.length;
+    }
+
+    /**
+     * Returns how many seconds {@link #shutdown()} waits for the publishers to drain.
+     */
+    public int getDrainTimeout() {
+        return this.drainTimeout;
+    }
+
+    /**
+     * Sets the probe of the latency to the analytics tables, before the harness is started.
+     */
+    public void setLatencyProbe(LatencyProbe latencyProbe) {
+        this.latencyProbe = latencyProbe;
+    }
+
+    /**
+     * Sets the recorder of the published events, before the harness is started. The recorder is closed when the
+     * harness is shut down.
+     */
+    public void setEventRecorder(EventRecorder recorder) {
+        this.recorder = recorder;
+        this.recording = recorder != null;
+    }
+
+    public boolean isRecyclingEvents() {
+        return this.recycler != null;
+    }
+
+    public void start() {
+        System.out.println("Publishing with " + this.publishers.length + " data publisher(s)");
+        if (this.recycler != null) {
+            System.out.println("Recycling the events after " + this.recycler.getRecycleDistance() +
+                    " newer event(s) per thread");
+        }
+        if (this.latencyProbe != null) {
+            this.latencyProbe.start();
+        }
+        this.metrics.start();
+    }
+
+    /**
+     * Publishes the given event, retrying on the other publishers of the pool while the queues are full, and blocking
+     * once the retries are exhausted. Safe to be called by any number of threads.
+     */
+    public void publish(Event event) {
+        if (this.recording) {
+            this.record(event);
+        }
+        if (this.latencyProbe != null) {
+            this.latencyProbe.stamp(event);
+        }
+        long publishStart = System.nanoTime();
+        int[] current = this.threadPublisher.get();
+        int index = current[0];
+        int attempt = 0;
+        while (!this.publishers[index].tryPublish(event)) {
+            if (attempt == this.publishRetries) {
+                this.blockingPublishes.increment();
+                this.publishers[index].publish(event);
+                break;
+            }
+            this.retries.increment();
+            index = (index + 1) % this.publishers.length;
+            if (index == current[0]) {
+                /* every publisher of the pool is full, back off before the next round */
+                LockSupport.parkNanos(Math.min(MIN_BACKOFF_NANOS << Math.min(attempt, 20), MAX_BACKOFF_NANOS));
+            }
+            attempt++;
+        }
+        /* stick to the publisher which accepted the event */
+        current[0] = index;
+        this.metrics.recordLatency(System.nanoTime() - publishStart);
+        this.metrics.eventPublished();
+    }
+
+    /**
+     * Records the given event, before the latency probe may stamp it, so that the recording does not hold the probe
+     * marks. A recording which fails is stopped, while the publishing goes on.
+     */
+    private void record(Event event) {
+        try {
+            this.recorder.record(event);
+        } catch (IOException e) {
+            this.recording = false;
+            System.out.println("Error in recording the published events, the recording is stopped: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes the payloads of the given source on the calling thread, until the source is exhausted or the given
+     * number of events has been published.
+     *
+     * @param streamId the id of the stream of the events
+     * @param metaData the meta data of every event, or null
+     * @param source   the source of the event payloads
+     * @param count    the maximum number of events to publish
+     * @return the number of events published
+     */
+    public long publishAll(String streamId, Object[] metaData, PayloadSource source, long count) throws Exception {
+        long published = 0;
+        Object[] payload;
+        while (published < count && (payload = source.nextPayload()) != null) {
+            this.publish(new Event(streamId, System.currentTimeMillis(), metaData, null, payload));
+            published++;
+        }
+        return published;
+    }
+
+    /**
+     * Publishes the payloads of the given writer on the calling thread, until the writer is exhausted or the given
+     * number of events has been published, recycling the events if the harness is configured to.
+     *
+     * @param streamId      the id of the stream of the events
+     * @param metaData      the meta data of every event, or null
+     * @param payloadLength the number of payload values of the stream
+     * @param writer        the writer of the event payloads
+     * @param count         the maximum number of events to publish
+     * @return the number of events published
+     */
+    public long publishAll(String streamId, Object[] metaData, int payloadLength, PayloadWriter writer, long count)
+            throws Exception {
+        long published = 0;
+        while (published < count) {
+            Event event = this.takeEvent(streamId, metaData, payloadLength);
+            if (!writer.writePayload(event.getPayloadData())) {
+                break;
+            }
+            this.publish(event);
+            published++;
+        }
+        return published;
+    }
+
+    /**
+     * Returns an event, stamped with the current time, whose payload array of the given length is to be filled in
+     * and which is then to be published by the calling thread with {@link #publish(Event)} before it takes another
+     * one. The event is a recycled one if the harness is configured to recycle events, and a new one otherwise.
+     */
+    public Event takeEvent(String streamId, Object[] metaData, int payloadLength) {
+        if (this.recycler != null) {
+            return this.recycler.take(streamId, metaData, payloadLength);
+        }
+        return new Event(streamId, System.currentTimeMillis(), metaData, null, new Object[payloadLength]);
+    }
+
+    /**
+     * Shuts down the publishers, waiting for them to send out the queued events, and reports the metrics of the run.
+     */
+    public void shutdown() throws IOException, InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.drainTimeout);
+        Thread[] drainers = new Thread[this.publishers.length];
+        for (int i = 0; i < this.publishers.length; i++) {
+            final DataPublisher publisher = this.publishers[i];
+            drainers[i] = new Thread("PublisherDrain-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        publisher.shutdown();
+                    } catch (DataEndpointException e) {
+                        System.out.println("Error in shutting down data publisher: " + e.getMessage());
+                    }
+                }
+            };
+            drainers[i].setDaemon(true);
+            drainers[i].start();
+        }
+        int undrained = 0;
+        for (Thread drainer : drainers) {
+            drainer.join(Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 1));
+            if (drainer.isAlive()) {
+                undrained++;
+            }
+        }
+        if (undrained > 0) {
+            System.out.println(undrained + " data publisher(s) did not drain within " + this.drainTimeout +
+                    " seconds, queued events may have been lost");
+        }
+        if (this.recorder != null) {
+            this.recording = false;
+            this.recorder.close();
+            System.out.println("Recorded " + this.recorder.getEventCount() + " event(s)");
+        }
+        this.metrics.stop();
+        if (this.latencyProbe != null) {
+            this.latencyProbe.stop();
+        }
+        long retryCount = this.retries.sum();
+        long blockingCount = this.blockingPublishes.sum();
+        if (retryCount > 0 || blockingCount > 0) {
+            System.out.println("Publisher queues were full: " + retryCount + " retried publish(es), " +
+                    blockingCount + " blocking publish(es)");
+        }
+    }
+
+}
@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency metrics of a sample agent run, reported on a fixed interval.
+ * <p/>
+ * The published events and the processed bytes are counted with {@link StripedCounter}s, and the publish latencies
+ * are recorded into a {@link LatencyHistogram} per thread, so the publishing threads do not contend on the metrics.
+ * Every interval, the events/sec, MB/sec, the depth of the agent's publish queue and the latency percentiles of the
+ * interval are printed. When the run is stopped, the totals are printed, and also written as a JSON summary if a
+ * summary file is given, so that runs can be compared as repeatable throughput benchmarks.
+ * <p/>
+ * The interval reports read the per thread histograms while they are being recorded, so they are approximate; the
+ * final summary is exact once the publishing threads have finished.
+ */
+public class PublisherMetrics {
+
+    /**
+     * System property for the reporting interval in seconds, 0 disables the interval reports.
+     */
+    public static final String INTERVAL_PROPERTY = "metricsInterval";
+
+    /**
+     * System property for the path of the JSON summary file written when the run is stopped.
+     */
+    public static final String SUMMARY_PROPERTY = "metricsSummary";
+
+    public static final int DEFAULT_INTERVAL = 5;
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * A value sampled by the reporter, e.g. the size of a queue.
+     */
+    public interface Gauge {
+
+        long getValue();
+
+    }
+
+    private final String name;
+
+    private final int interval;
+
+    private final File summaryFile;
+
+    private final StripedCounter events = new StripedCounter();
+
+    private final StripedCounter bytes = new StripedCounter();
+
+    private final List<LatencyHistogram> histograms = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<LatencyHistogram> threadHistogram = new ThreadLocal<LatencyHistogram>() {
+        @Override
+        protected LatencyHistogram initialValue() {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histograms.add(histogram);
+            return histogram;
+        }
+    };
+
+    private volatile Gauge bytesGauge;
+
+    private volatile Gauge queueDepthGauge;
+
+    private volatile long totalBytes;
+
+    private ScheduledExecutorService reporter;
+
+    private long startNanos;
+
+    private long startTime;
+
+    private long elapsedNanos;
+
+    private volatile long maxQueueDepth;
+
+    private long lastReportNanos;
+
+    private long lastEvents;
+
+    private long lastBytes;
+
+    private LatencyHistogram lastLatencies = new LatencyHistogram();
+
+    /**
+     * @param name        the name the reports are labeled with, e.g. the agent name
+     * @param interval    the reporting interval in seconds, 0 disables the interval reports
+     * @param summaryFile the file to write the JSON summary to when stopped, or null
+     */
+    public PublisherMetrics(String name, int interval, File summaryFile) {
+        this.name = name;
+        this.interval = interval;
+        this.summaryFile = summaryFile;
+    }
+
+    /**
+     * Creates metrics configured with the {@link #INTERVAL_PROPERTY} and {@link #SUMMARY_PROPERTY} system properties.
+     */
+    public static PublisherMetrics fromSystemProperties(String name) {
+        String interval = System.getProperty(INTERVAL_PROPERTY);
+        String summary = System.getProperty(SUMMARY_PROPERTY);
+        return new PublisherMetrics(name,
+                interval == null || interval.isEmpty() ? DEFAULT_INTERVAL : Integer.parseInt(interval),
+                summary == null || summary.isEmpty() ? null : new File(summary));
+    }
+
+    /**
+     * Samples the processed bytes from the given gauge, e.g. the position in the input file, instead of counting
+     * them with {@link #bytesProcessed(long)}.
+     */
+    public void setBytesGauge(Gauge bytesGauge) {
+        this.bytesGauge = bytesGauge;
+    }
+
+    /**
+     * Samples the depth of the agent's publish queue from the given gauge, in the units the agent queues in, e.g.
+     * events, batches or dump streams.
+     */
+    public void setQueueDepthGauge(Gauge queueDepthGauge) {
+        this.queueDepthGauge = queueDepthGauge;
+    }
+
+    /**
+     * Sets the total number of bytes to be processed, so that the progress is reported as a percentage.
+     */
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public synchronized void start() {
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.lastReportNanos = this.startNanos;
+        if (this.interval > 0) {
+            this.reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, name + "MetricsReporter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.reporter.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            }, this.interval, this.interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the interval reports, prints the totals of the run, and writes the JSON summary if a summary file is set.
+     */
+    public void stop() throws IOException {
+        synchronized (this) {
+            if (this.reporter != null) {
+                this.reporter.shutdownNow();
+                this.reporter = null;
+            }
+            this.elapsedNanos = System.nanoTime() - this.startNanos;
+            this.sampleQueueDepth();
+        }
+        LatencyHistogram latencies = this.getLatencies();
+        double seconds = Math.max(this.elapsedNanos, 1) / 1e9;
+        long eventCount = this.getEventCount();
+        long byteCount = this.getByteCount();
+        StringBuilder builder = new StringBuilder();
+        builder.append(this.name).append(": published ").append(eventCount).append(" events in ").append(seconds)
+                .append(" seconds, TPS: ").append(eventCount / seconds);
+        if (this.hasBytes()) {
+            builder.append(", Data Rate: ").append(byteCount / MB / seconds).append(" MB/s");
+        }
+        if (latencies.getTotalCount() > 0) {
+            builder.append(", ");
+            appendLatencies(builder, latencies);
+        }
+        System.out.println(builder);
+        if (this.summaryFile != null) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.summaryFile),
+                    StandardCharsets.UTF_8)) {
+                writer.write(this.toJSON(latencies, seconds, eventCount, byteCount));
+            }
+            System.out.println("Wrote metrics summary to " + this.summaryFile.getAbsolutePath());
+        }
+    }
+
+    public void eventPublished() {
+        this.events.increment();
+    }
+
+    public void eventsPublished(long count) {
+        this.events.add(count);
+    }
+
+    public void bytesProcessed(long count) {
+        this.bytes.add(count);
+    }
+
+    /**
+     * Records the latency of a publish call in the histogram of the calling thread.
+     */
+    public void recordLatency(long nanos) {
+        this.threadHistogram.get().record(nanos);
+    }
+
+    public long getEventCount() {
+        return this.events.sum();
+    }
+
+    public long getByteCount() {
+        Gauge gauge = this.bytesGauge;
+        return gauge != null ? gauge.getValue() : this.bytes.sum();
+    }
+
+    /**
+     * Returns the publish latencies recorded by all the threads so far.
+     */
+    public LatencyHistogram getLatencies() {
+        LatencyHistogram result = new LatencyHistogram();
+        for (LatencyHistogram histogram : this.histograms) {
+            result.merge(histogram);
+        }
+        return result;
+    }
+
+    private synchronized void report() {
+        long now = System.nanoTime();
+        long eventCount = this.getEventCount();
+        long byteCount = this.getByteCount();
+        LatencyHistogram latencies = this.getLatencies();
+        LatencyHistogram intervalLatencies = latencies.since(this.lastLatencies);
+        double seconds = Math.max(now - this.lastReportNanos, 1) / 1e9;
+        StringBuilder builder = new StringBuilder();
+        builder.append('[').append(new Date()).append("] ").append(this.name).append(": ");
+        if (this.totalBytes > 0) {
+            builder.append((int) (byteCount * 100 / this.totalBytes)).append("% -> ");
+        }
+        builder.append("Published: ").append(eventCount).append(", TPS: ")
+                .append((eventCount - this.lastEvents) / seconds);
+        if (this.hasBytes()) {
+            builder.append(", ").append(byteCount / (1024 * 1024)).append(" MB, Data Rate: ")
+                    .append((byteCount - this.lastBytes) / MB / seconds).append(" MB/s");
+        }
+        if (this.queueDepthGauge != null) {
+            builder.append(", Queue Depth: ").append(this.sampleQueueDepth());
+        }
+        if (intervalLatencies.getTotalCount() > 0) {
+            builder.append(", ");
+            appendLatencies(builder, intervalLatencies);
+        }
+        System.out.println(builder);
+        this.lastReportNanos = now;
+        this.lastEvents = eventCount;
+        this.lastBytes = byteCount;
+        this.lastLatencies = latencies;
+    }
+
+    private long sampleQueueDepth() {
+        Gauge gauge = this.queueDepthGauge;
+        if (gauge == null) {
+            return 0;
+        }
+        long depth = gauge.getValue();
+        if (depth > this.maxQueueDepth) {
+            this.maxQueueDepth = depth;
+        }
+        return depth;
+    }
+
+    private boolean hasBytes() {
+        return this.bytesGauge != null || this.totalBytes > 0 || this.bytes.sum() > 0;
+    }
+
+    private static void appendLatencies(StringBuilder builder, LatencyHistogram latencies) {
+        builder.append("Latency (us) p50: ").append(micros(latencies.getValueAtPercentile(50)))
+                .append(", p99: ").append(micros(latencies.getValueAtPercentile(99)))
+                .append(", p99.9: ").append(micros(latencies.getValueAtPercentile(99.9)))
+                .append(", max: ").append(micros(latencies.getMax()));
+    }
+
+    private String toJSON(LatencyHistogram latencies, double seconds, long eventCount, long byteCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n");
+        builder.append("  \"name\": \"").append(escape(this.name)).append("\",\n");
+        builder.append("  \"startTime\": ").append(this.startTime).append(",\n");
+        builder.append("  \"durationSeconds\": ").append(format(seconds)).append(",\n");
+        builder.append("  \"events\": ").append(eventCount).append(",\n");
+        builder.append("  \"eventsPerSecond\": ").append(format(eventCount / seconds)).append(",\n");
+        builder.append("  \"bytes\": ").append(byteCount).append(",\n");
+        builder.append("  \"megabytesPerSecond\": ").append(format(byteCount / MB / seconds)).append(",\n");
+        builder.append("  \"maxQueueDepth\": ").append(this.maxQueueDepth).append(",\n");
+        builder.append("  \"latencyMicros\": {\n");
+        builder.append("    \"count\": ").append(latencies.getTotalCount()).append(",\n");
+        builder.append("    \"p50\": ").append(format(micros(latencies.getValueAtPercentile(50)))).append(",\n");
+        builder.append("    \"p90\": ").append(format(micros(latencies.getValueAtPercentile(90)))).append(",\n");
+        builder.append("    \"p99\": ").append(format(micros(latencies.getValueAtPercentile(99)))).append(",\n");
+        builder.append("    \"p99.9\": ").append(format(micros(latencies.getValueAtPercentile(99.9)))).append(",\n");
+        builder.append("    \"max\": ").append(format(micros(latencies.getMax()))).append("\n");
+        builder.append("  }\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Enumeration;
+
+/**
+ * Utility methods shared by the sample agents.
+ */
+public final class SampleAgentUtils {
+
+    private SampleAgentUtils() {
+    }
+
+    public static String getDataAgentConfigPath() {
+        File filePath = new File("src" + File.separator + "main" + File.separator + "resources");
+        if (!filePath.exists()) {
+            filePath = new File("test" + File.separator + "resources");
+        }
+        if (!filePath.exists()) {
+            filePath = new File("resources");
+        }
+        if (!filePath.exists()) {
+            filePath = new File("test" + File.separator + "resources");
+        }
+        return filePath.getAbsolutePath() + File.separator + "data-agent-conf.xml";
+    }
+
+    public static InetAddress getLocalAddress() throws SocketException, UnknownHostException {
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces.hasMoreElements()) {
+            NetworkInterface iface = interfaces.nextElement();
+            Enumeration<InetAddress> addresses = iface.getInetAddresses();
+            while (addresses.hasMoreElements()) {
+                InetAddress addr = addresses.nextElement();
+                if (addr instanceof Inet4Address && !addr.isLoopbackAddress()) {
+                    return addr;
+                }
+            }
+        }
+        return InetAddress.getLocalHost();
+    }
+
+    /**
+     * Returns the value of the given system property, or the given default if it is not set or empty, as the Ant
+     * builds of the samples pass the properties which are not given on the command line as empty values.
+     */
+    public static String getProperty(String name, String def) {
+        String result = System.getProperty(name);
+        if (result == null || result.isEmpty()) {
+            result = def;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the integer value of the given element of the agent of the given type in the given data agent
+     * configuration file, or the given default if the file cannot be read or the agent does not set the value.
+     */
+    public static int getAgentConfigValue(String configPath, String type, String element, int def) {
+        try {
+            NodeList agents = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(configPath))
+                    .getElementsByTagName("Agent");
+            for (int i = 0; i < agents.getLength(); i++) {
+                Element agent = (Element) agents.item(i);
+                NodeList names = agent.getElementsByTagName("Name");
+                if (names.getLength() == 0 || !type.equals(names.item(0).getTextContent().trim())) {
+                    continue;
+                }
+                NodeList values = agent.getElementsByTagName(element);
+                if (values.getLength() > 0) {
+                    return Integer.parseInt(values.item(0).getTextContent().trim());
+                }
+            }
+        } catch (ParserConfigurationException | SAXException | IOException | NumberFormatException e) {
+            System.out.println("Error in reading " + element + " of the " + type + " agent from " + configPath +
+                    ", using " + def + ": " + e.getMessage());
+        }
+        return def;
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.sample.commons;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter which is updated by many threads, with its value spread over several cells, one cache line apart, so that
+ * the threads seldom contend on the same cell. This serves the purpose of the JDK 8 LongAdder on Java 7: updates are
+ * cheap, while reading the value sums up all the cells, which is meant for the periodic reporting.
+ */
+public class StripedCounter {
+
+    /**
+     * The number of longs in a cache line, the cells are this far apart in the array.
+     */
+    private static final int CELL_SPACING = 8;
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    public StripedCounter() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.cells = new AtomicLongArray(stripes * CELL_SPACING);
+        this.mask = stripes - 1;
+    }
+
+    public void increment() {
+        this.add(1);
+    }
+
+    public void add(long value) {
+        this.cells.getAndAdd(this.cellIndex(), value);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < this.cells.length(); i += CELL_SPACING) {
+            sum += this.cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Threads are mapped to cells by their id, which is scrambled, so that consecutively created threads, e.g. the
+     * ones of a pool, land on different cells.
+     */
+    private int cellIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & this.mask) * CELL_SPACING;
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.das.httpdlogs.sample;
+
+import java.nio.charset.Charset;
+
+/**
+ * Hand written tokenizer of Apache httpd access log lines in the Common or Combined Log Format, e.g.
+ * <pre>
+ * 1.202.218.8 - - [20/Jun/2012:19:05:12 +0200] "GET /robots.txt HTTP/1.0" 404 492 "-" "Mozilla/5.0"
+ * </pre>
+ * The tokenizer works directly on the raw bytes of a line and only creates strings for the fields which are
+ * published, i.e. remote IP, request date, requested path, status code and response length. The request date keeps
+ * the leading bracket and drops the time zone, and the request is reduced to its path, as with the earlier whitespace
+ * split based parsing. Unlike that parsing, request lines with extra spaces do not shift the status code and length.
+ */
+public final class AccessLogTokenizer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private AccessLogTokenizer() {
+    }
+
+    /**
+     * Tokenizes the line in line[start, end), excluding the line terminator.
+     *
+     * @return the event payload, i.e. remote IP, request date, request path, HTTP code and length, or null if the
+     * line is not a valid access log entry
+     */
+    public static Object[] tokenize(byte[] line, int start, int end) {
+        /* remote host */
+        int hostEnd = indexOf(line, start, end, (byte) ' ');
+        if (hostEnd <= start) {
+            return null;
+        }
+        /* skip the identity and the user */
+        int pos = indexOf(line, hostEnd + 1, end, (byte) ' ');
+        pos = pos < 0 ? -1 : indexOf(line, pos + 1, end, (byte) ' ');
+        if (pos < 0 || pos + 1 >= end || line[pos + 1] != '[') {
+            return null;
+        }
+        /* request time, up to the time zone */
+        int dateStart = pos + 1;
+        int dateEnd = dateStart;
+        while (dateEnd < end && line[dateEnd] != ' ' && line[dateEnd] != ']') {
+            dateEnd++;
+        }
+        int timeEnd = indexOf(line, dateEnd, end, (byte) ']');
+        if (timeEnd < 0 || timeEnd + 2 >= end || line[timeEnd + 1] != ' ' || line[timeEnd + 2] != '"') {
+            return null;
+        }
+        /* request line, where the path is the second token */
+        int requestStart = timeEnd + 3;
+        int requestEnd = requestStart;
+        while (requestEnd < end && line[requestEnd] != '"') {
+            requestEnd += line[requestEnd] == '\\' ? 2 : 1;
+        }
+        if (requestEnd >= end) {
+            return null;
+        }
+        int pathStart = indexOf(line, requestStart, requestEnd, (byte) ' ');
+        int pathEnd;
+        if (pathStart < 0) {
+            pathStart = requestEnd;
+            pathEnd = requestEnd;
+        } else {
+            pathStart++;
+            pathEnd = indexOf(line, pathStart, requestEnd, (byte) ' ');
+            if (pathEnd < 0) {
+                pathEnd = requestEnd;
+            }
+        }
+        /* status code and response length */
+        int statusStart = requestEnd + 2;
+        if (statusStart >= end || line[requestEnd + 1] != ' ') {
+            return null;
+        }
+        int statusEnd = indexOf(line, statusStart, end, (byte) ' ');
+        if (statusEnd <= statusStart) {
+            return null;
+        }
+        int lengthEnd = indexOf(line, statusEnd + 1, end, (byte) ' ');
+        if (lengthEnd < 0) {
+            lengthEnd = end;
+        }
+        if (lengthEnd <= statusEnd + 1) {
+            return null;
+        }
+        return new Object[]{
+                string(line, start, hostEnd),
+                string(line, dateStart, dateEnd),
+                string(line, pathStart, pathEnd),
+                string(line, statusStart, statusEnd),
+                string(line, statusEnd + 1, lengthEnd)
+        };
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String string(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, UTF_8);
+    }
+
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.das.httpdlogs.sample;
+
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.das.sample.commons.PublisherMetrics;
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * High throughput access log ingestion, which reads, parses and publishes on separate threads.
+ * <p/>
+ * The reader reads the log in large chunks, cut at the last line break, and hands them to a pool of parser threads.
+ * The parsers tokenize the lines with {@link AccessLogTokenizer} and pass batches of events to a single publisher
+ * thread. All the stages are connected with bounded queues, so a slow receiver throttles the reader instead of
+ * filling up the memory, and the progress is reported through {@link PublisherMetrics} on a fixed interval instead of
+ * per line.
+ */
+public class LogIngestionPipeline {
+
+    private static final int EVENT_BATCH_SIZE = 500;
+
+    private static final Chunk END_OF_CHUNKS = new Chunk(new byte[0], 0);
+
+    private static final Event[] END_OF_EVENTS = new Event[0];
+
+    private final PublisherHarness harness;
+
+    private final String streamId;
+
+    private final int parserThreads;
+
+    private final int chunkSize;
+
+    private final BlockingQueue<Chunk> chunks;
+
+    private final BlockingQueue<Event[]> eventBatches;
+
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private final AtomicLong linesParsed = new AtomicLong();
+
+    private final AtomicLong malformedLines = new AtomicLong();
+
+    private final AtomicLong eventsPublished = new AtomicLong();
+
+    /**
+     * @param harness       the harness to publish the events with, and to report the progress to
+     * @param streamId      the id of the stream the events belong to
+     * @param parserThreads the number of parser threads
+     * @param chunkSize     the size in bytes of the chunks the log is read in
+     */
+    public LogIngestionPipeline(PublisherHarness harness, String streamId, int parserThreads, int chunkSize) {
+        this.harness = harness;
+        this.streamId = streamId;
+        this.parserThreads = parserThreads;
+        this.chunkSize = chunkSize;
+        this.chunks = new ArrayBlockingQueue<>(parserThreads * 2);
+        this.eventBatches = new ArrayBlockingQueue<>(parserThreads * 4);
+        this.freeBuffers = new ArrayBlockingQueue<>(parserThreads * 2 + 2);
+    }
+
+    /**
+     * Ingests the given access log file, returning once all the events have been handed to the publisher.
+     */
+    public void ingest(File file) throws IOException, InterruptedException {
+        final long start = System.currentTimeMillis();
+        Thread[] parsers = new Thread[this.parserThreads];
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i] = new Thread(new Parser(), "HttpdLogParser-" + i);
+            parsers[i].start();
+        }
+        Thread publisher = new Thread(new Publisher(), "HttpdLogPublisher");
+        publisher.start();
+        PublisherMetrics metrics = this.harness.getMetrics();
+        metrics.setTotalBytes(file.length());
+        metrics.setQueueDepthGauge(new PublisherMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                /* an estimate in events, most of the queued batches are full */
+                return eventBatches.size() * (long) EVENT_BATCH_SIZE;
+            }
+        });
+        boolean completed = false;
+        try {
+            try (InputStream in = new FileInputStream(file)) {
+                this.read(in);
+            }
+            for (Thread ignored : parsers) {
+                this.put(this.chunks, END_OF_CHUNKS);
+            }
+            for (Thread parser : parsers) {
+                parser.join();
+            }
+            this.put(this.eventBatches, END_OF_EVENTS);
+            publisher.join();
+            completed = true;
+        } finally {
+            if (!completed) {
+                /* the sentinels may never be delivered, so the stages are interrupted instead of waiting for them */
+                for (Thread parser : parsers) {
+                    parser.interrupt();
+                }
+                publisher.interrupt();
+            }
+        }
+        if (this.failure.get() != null) {
+            throw new IOException("Error in ingesting access log " + file, this.failure.get());
+        }
+        long time = System.currentTimeMillis() - start;
+        System.out.println("Published " + this.eventsPublished.get() + " log events from " + this.linesParsed.get() +
+                " line(s) in " + time / 1000.0 + " seconds, TPS: " + this.eventsPublished.get() / (double) time * 1000.0 +
+                ", skipped " + this.malformedLines.get() + " malformed line(s).");
+    }
+
+    public long getEventsPublished() {
+        return this.eventsPublished.get();
+    }
+
+    public long getMalformedLines() {
+        return this.malformedLines.get();
+    }
+
+    private void read(InputStream in) throws IOException, InterruptedException {
+        byte[] buffer = this.takeBuffer(0);
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                /* a single line longer than the buffer */
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int count = in.read(buffer, length, buffer.length - length);
+            if (count < 0) {
+                if (length > 0) {
+                    this.put(this.chunks, new Chunk(buffer, length));
+                }
+                return;
+            }
+            this.harness.getMetrics().bytesProcessed(count);
+            length += count;
+            int lastLineEnd = length - 1;
+            while (lastLineEnd >= 0 && buffer[lastLineEnd] != '\n') {
+                lastLineEnd--;
+            }
+            if (lastLineEnd < 0) {
+                continue;
+            }
+            int remaining = length - lastLineEnd - 1;
+            byte[] next = this.takeBuffer(remaining);
+            System.arraycopy(buffer, lastLineEnd + 1, next, 0, remaining);
+            this.put(this.chunks, new Chunk(buffer, lastLineEnd + 1));
+            buffer = next;
+            length = remaining;
+        }
+    }
+
+    private byte[] takeBuffer(int minFree) {
+        byte[] buffer = this.freeBuffers.poll();
+        if (buffer == null || buffer.length - minFree < this.chunkSize / 2) {
+            buffer = new byte[Math.max(this.chunkSize, minFree * 2)];
+        }
+        return buffer;
+    }
+
+    /**
+     * Blocks until the item is queued, giving up if one of the stages has failed.
+     */
+    private <T> void put(BlockingQueue<T> queue, T item) throws IOException, InterruptedException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (this.failure.get() != null) {
+                throw new IOException("Access log ingestion aborted", this.failure.get());
+            }
+        }
+    }
+
+    /**
+     * A block of complete log lines, i.e. buffer[0, length).
+     */
+    private static class Chunk {
+
+        private final byte[] buffer;
+
+        private final int length;
+
+        private Chunk(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+    }
+
+    private class Parser implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                Chunk chunk;
+                while ((chunk = chunks.take()) != END_OF_CHUNKS) {
+                    this.parse(chunk);
+                    freeBuffers.offer(chunk.buffer);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private void parse(Chunk chunk) throws IOException, InterruptedException {
+            byte[] buffer = chunk.buffer;
+            Event[] batch = new Event[EVENT_BATCH_SIZE];
+            int batchSize = 0;
+            int lineStart = 0;
+            while (lineStart < chunk.length) {
+                int lineEnd = lineStart;
+                while (lineEnd < chunk.length && buffer[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd > lineStart) {
+                    linesParsed.incrementAndGet();
+                    Object[] payload = AccessLogTokenizer.tokenize(buffer, lineStart, lineEnd);
+                    if (payload == null) {
+                        malformedLines.incrementAndGet();
+                    } else {
+                        batch[batchSize++] = new Event(streamId, System.currentTimeMillis(),
+                                new Object[]{"external"}, null, payload);
+                        if (batchSize == batch.length) {
+                            put(eventBatches, batch);
+                            batch = new Event[EVENT_BATCH_SIZE];
+                            batchSize = 0;
+                        }
+                    }
+                }
+                lineStart = next;
+            }
+            if (batchSize > 0) {
+                put(eventBatches, Arrays.copyOf(batch, batchSize));
+            }
+        }
+
+    }
+
+    private class Publisher implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                Event[] batch;
+                while ((batch = eventBatches.take()) != END_OF_EVENTS) {
+                    for (Event event : batch) {
+                        harness.publish(event);
+                    }
+                    eventsPublished.addAndGet(batch.length);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+    }
+
+}
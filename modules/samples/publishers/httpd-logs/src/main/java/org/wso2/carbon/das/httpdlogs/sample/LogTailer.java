@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.das.httpdlogs.sample;
+
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Follows a live access log, publishing the lines as they are appended, like "tail -F".
+ * <p/>
+ * The log is read in large chunks with positional NIO reads, and only complete lines are published. Rotation is
+ * detected by a change of the file identity (the inode, where the platform exposes one), in which case the old file
+ * is kept open, as the server goes on writing to it until it is reloaded, and only once the new file has data and the
+ * old one has stayed idle for {@link #ROTATION_IDLE_POLLS} polls is the new one read from the start. Truncation is
+ * detected by the file becoming smaller than the read position. After each chunk, the offset of the last published
+ * line is persisted to a checkpoint file along with the file identity, so a restarted tailer resumes where it stopped,
+ * instead of re-sending or skipping lines. If the log has been rotated in the meantime, the checkpointed file is
+ * looked up among the rotated files next to the log, i.e. the ones named after it such as access.log.1, and finished
+ * before the new log is read. Lines are only skipped when that file is no longer there uncompressed, e.g. once it has
+ * been rotated again and compressed or removed. The checkpoint records the lines handed to the publisher, so events
+ * still queued in the agent when the process is killed can be lost.
+ */
+public class LogTailer {
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The number of consecutive polls without data after which a rotated file is taken to be no longer written to.
+     */
+    private static final int ROTATION_IDLE_POLLS = 3;
+
+    private static final String CHECKPOINT_FILE_KEY = "fileKey";
+
+    private static final String CHECKPOINT_OFFSET = "offset";
+
+    private final PublisherHarness harness;
+
+    private final String streamId;
+
+    private final Path logPath;
+
+    private final Path checkpointPath;
+
+    private volatile boolean running = true;
+
+    private long eventsPublished;
+
+    private long malformedLines;
+
+    public LogTailer(PublisherHarness harness, String streamId, Path logPath, Path checkpointPath) {
+        this.harness = harness;
+        this.streamId = streamId;
+        this.logPath = logPath;
+        this.checkpointPath = checkpointPath;
+    }
+
+    /**
+     * Follows the log until {@link #stop()} is called or the thread is interrupted.
+     */
+    public void follow() throws IOException, InterruptedException {
+        Properties checkpoint = this.readCheckpoint();
+        FileChannel channel = null;
+        String fileKey = null;
+        /* offset of the first byte in the buffer, i.e. the end of the last published line */
+        long offset = 0;
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int length = 0;
+        /* polls without data since the file being read was rotated */
+        int idlePolls = 0;
+        try {
+            while (this.running) {
+                if (channel == null) {
+                    Path path = checkpoint == null ? null : this.findRotatedFile(checkpoint);
+                    if (path == null) {
+                        path = this.logPath;
+                    }
+                    if (!Files.exists(path)) {
+                        Thread.sleep(POLL_INTERVAL_MILLIS);
+                        continue;
+                    }
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    fileKey = fileKey(path);
+                    offset = this.resumeOffset(checkpoint, fileKey, channel.size());
+                    checkpoint = null;
+                    length = 0;
+                    idlePolls = 0;
+                    System.out.println("Following " + path + " from offset " + offset);
+                }
+                if (length == buffer.length) {
+                    /* a single line longer than the buffer */
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int count = channel.read(ByteBuffer.wrap(buffer, length, buffer.length - length), offset + length);
+                if (count > 0) {
+                    idlePolls = 0;
+                    length += count;
+                    int consumed = this.publishLines(buffer, length, false);
+                    if (consumed > 0) {
+                        System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+                        length -= consumed;
+                        offset += consumed;
+                        this.writeCheckpoint(fileKey, offset);
+                    }
+                    continue;
+                }
+                String currentFileKey = fileKey(this.logPath);
+                if (fileKey != null && currentFileKey != null && !fileKey.equals(currentFileKey)) {
+                    if (idlePolls == 0) {
+                        System.out.println("Detected rotation of " + this.logPath + ", draining the rotated file");
+                    }
+                    if (idlePolls < ROTATION_IDLE_POLLS || fileSize(this.logPath) <= 0) {
+                        /* the server may still be writing to the rotated file until it is reloaded */
+                        idlePolls++;
+                        Thread.sleep(POLL_INTERVAL_MILLIS);
+                        continue;
+                    }
+                    /* the rotated file has been drained, so publish a trailing unterminated line if any */
+                    this.publishLines(buffer, length, true);
+                    channel.close();
+                    channel = null;
+                    System.out.println("Drained the rotated file, following the new " + this.logPath);
+                } else if (channel.size() < offset + length) {
+                    System.out.println("Detected truncation of " + this.logPath + ", reading from the start");
+                    offset = 0;
+                    length = 0;
+                    this.writeCheckpoint(fileKey, offset);
+                } else {
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                }
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+            System.out.println("Stopped following " + this.logPath + ", published " + this.eventsPublished +
+                    " log events, skipped " + this.malformedLines + " malformed line(s).");
+        }
+    }
+
+    public void stop() {
+        this.running = false;
+    }
+
+    public long getEventsPublished() {
+        return this.eventsPublished;
+    }
+
+    /**
+     * Publishes the complete lines in buffer[0, length).
+     *
+     * @param flush whether trailing bytes without a line terminator should be published as a line
+     * @return the number of bytes consumed
+     */
+    private int publishLines(byte[] buffer, int length, boolean flush) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == '\n') {
+                this.publishLine(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (flush && lineStart < length) {
+            this.publishLine(buffer, lineStart, length);
+            lineStart = length;
+        }
+        return lineStart;
+    }
+
+    private void publishLine(byte[] buffer, int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+        Object[] payload = AccessLogTokenizer.tokenize(buffer, start, end);
+        if (payload == null) {
+            this.malformedLines++;
+            return;
+        }
+        this.harness.publish(new Event(this.streamId, System.currentTimeMillis(), new Object[]{"external"},
+                null, payload));
+        this.eventsPublished++;
+    }
+
+    private long resumeOffset(Properties checkpoint, String fileKey, long size) {
+        if (checkpoint == null) {
+            return 0;
+        }
+        long offset = Long.parseLong(checkpoint.getProperty(CHECKPOINT_OFFSET, "0"));
+        String checkpointFileKey = checkpoint.getProperty(CHECKPOINT_FILE_KEY, "");
+        if ((fileKey == null || fileKey.equals(checkpointFileKey)) && offset <= size) {
+            return offset;
+        }
+        System.out.println("The checkpointed file of " + this.logPath + " has been truncated, or rotated and " +
+                "removed, since the last checkpoint, reading from the start");
+        return 0;
+    }
+
+    /**
+     * Returns the rotated file of the log, e.g. access.log.1, which is the checkpointed file, or null if the log itself
+     * is the checkpointed file or the checkpointed file cannot be found.
+     */
+    private Path findRotatedFile(Properties checkpoint) throws IOException {
+        String checkpointFileKey = checkpoint.getProperty(CHECKPOINT_FILE_KEY, "");
+        Path directory = this.logPath.toAbsolutePath().getParent();
+        if (checkpointFileKey.isEmpty() || checkpointFileKey.equals(fileKey(this.logPath)) || directory == null) {
+            return null;
+        }
+        String prefix = this.logPath.getFileName() + ".";
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(directory)) {
+            for (Path sibling : siblings) {
+                if (sibling.getFileName().toString().startsWith(prefix) && Files.isRegularFile(sibling) &&
+                        checkpointFileKey.equals(fileKey(sibling))) {
+                    System.out.println(this.logPath + " has been rotated since the last checkpoint, finishing " +
+                            sibling + " first");
+                    return sibling;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Properties readCheckpoint() throws IOException {
+        if (!Files.exists(this.checkpointPath)) {
+            return null;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(this.checkpointPath)) {
+            checkpoint.load(in);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file and moves it in place, so that a crash never leaves a partially
+     * written checkpoint behind.
+     */
+    private void writeCheckpoint(String fileKey, long offset) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(CHECKPOINT_FILE_KEY, fileKey == null ? "" : fileKey);
+        checkpoint.setProperty(CHECKPOINT_OFFSET, String.valueOf(offset));
+        Path tmpPath = this.checkpointPath.resolveSibling(this.checkpointPath.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpPath)) {
+            checkpoint.store(out, "HTTPD log agent checkpoint of " + this.logPath);
+        }
+        Files.move(tmpPath, this.checkpointPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the identity of the file, i.e. the device and inode on Unix, or null if the platform does not expose
+     * one or the file does not exist.
+     */
+    private static String fileKey(Path path) throws IOException {
+        try {
+            Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return fileKey == null ? null : fileKey.toString();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the size of the file, or -1 if it does not exist.
+     */
+    private static long fileSize(Path path) throws IOException {
+        try {
+            return Files.size(path);
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.smarthome.sample;
+
+import org.wso2.carbon.das.sample.commons.LatencyHistogram;
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generation mode of the smart home agent, which publishes smart home events from several producer threads at
+ * a target rate for a fixed duration, and reports the achieved throughput and the publish latency percentiles.
+ * <p/>
+ * The target rate is split evenly between the producers, and each producer paces itself against its own schedule,
+ * so a producer which falls behind catches up instead of lowering the overall rate. A rate of 0 or less publishes as
+ * fast as the publisher accepts the events.
+ */
+public class LoadGenerator {
+
+    private final PublisherHarness harness;
+
+    private final String streamId;
+
+    private final int threadCount;
+
+    private final double eventsPerSecond;
+
+    private final long durationMillis;
+
+    private LatencyHistogram latencies = new LatencyHistogram();
+
+    private long publishedCount;
+
+    private long elapsedNanos;
+
+    public LoadGenerator(PublisherHarness harness, String streamId, int threadCount, double eventsPerSecond,
+                         long durationMillis) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.harness = harness;
+        this.streamId = streamId;
+        this.threadCount = threadCount;
+        this.eventsPerSecond = eventsPerSecond;
+        this.durationMillis = durationMillis;
+    }
+
+    public void run() throws InterruptedException {
+        long intervalNanos = this.eventsPerSecond > 0 ? (long) (this.threadCount * 1e9 / this.eventsPerSecond) : 0;
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(this.durationMillis);
+        Producer[] producers = new Producer[this.threadCount];
+        Thread[] threads = new Thread[this.threadCount];
+        for (int i = 0; i < this.threadCount; i++) {
+            /* stagger the producer schedules, so that they do not all publish at the same instant */
+            producers[i] = new Producer(startNanos + i * (intervalNanos / this.threadCount), intervalNanos,
+                    deadlineNanos);
+            threads[i] = new Thread(producers[i], "SmartHomeProducer-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        this.elapsedNanos = System.nanoTime() - startNanos;
+        for (Producer producer : producers) {
+            this.publishedCount += producer.published;
+        }
+        this.latencies = this.harness.getMetrics().getLatencies();
+    }
+
+    public long getPublishedCount() {
+        return this.publishedCount;
+    }
+
+    public double getAchievedTPS() {
+        return this.elapsedNanos == 0 ? 0 : this.publishedCount / (this.elapsedNanos / 1e9);
+    }
+
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    public void printReport() {
+        System.out.println("Published " + this.publishedCount + " events from " + this.threadCount + " thread(s) in " +
+                this.elapsedNanos / 1e9 + " seconds, target TPS: " +
+                (this.eventsPerSecond > 0 ? String.valueOf(this.eventsPerSecond) : "unbounded") +
+                ", achieved TPS: " + this.getAchievedTPS());
+        System.out.println("Publish latency (us) - p50: " + micros(this.latencies.getValueAtPercentile(50)) +
+                ", p90: " + micros(this.latencies.getValueAtPercentile(90)) +
+                ", p99: " + micros(this.latencies.getValueAtPercentile(99)) +
+                ", p99.9: " + micros(this.latencies.getValueAtPercentile(99.9)) +
+                ", max: " + micros(this.latencies.getMax()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * A producer thread, with its own random source.
+     */
+    private class Producer implements Runnable {
+
+        private final long firstSendNanos;
+
+        private final long intervalNanos;
+
+        private final long deadlineNanos;
+
+        private long published;
+
+        private Producer(long firstSendNanos, long intervalNanos, long deadlineNanos) {
+            this.firstSendNanos = firstSendNanos;
+            this.intervalNanos = intervalNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void run() {
+            Random random = ThreadLocalRandom.current();
+            long nextSendNanos = this.firstSendNanos;
+            while (true) {
+                long now = System.nanoTime();
+                if (now - this.deadlineNanos >= 0) {
+                    break;
+                }
+                if (this.intervalNanos > 0) {
+                    if (nextSendNanos - now > 0) {
+                        LockSupport.parkNanos(Math.min(nextSendNanos, this.deadlineNanos) - now);
+                        continue;
+                    }
+                    nextSendNanos += this.intervalNanos;
+                }
+                Event event = harness.takeEvent(streamId, null, SmartHomeAgent.PAYLOAD_LENGTH);
+                SmartHomeAgent.writePayload(random, event.getPayloadData());
+                harness.publish(event);
+                this.published++;
+            }
+        }
+
+    }
+
+}
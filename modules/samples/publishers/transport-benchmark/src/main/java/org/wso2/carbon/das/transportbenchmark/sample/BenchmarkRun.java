@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.transportbenchmark.sample;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.wso2.carbon.das.sample.commons.LatencyHistogram;
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.das.sample.commons.SampleAgentUtils;
+import org.wso2.carbon.databridge.agent.AgentHolder;
+import org.wso2.carbon.databridge.agent.DataPublisher;
+import org.wso2.carbon.databridge.commons.AttributeType;
+import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.databridge.commons.StreamDefinition;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single run of the transport benchmark, for one transport and one data agent configuration, which is forked by
+ * {@link TransportBenchmark} into a JVM of its own, as the data agent configuration is loaded once per JVM.
+ * <p/>
+ * The run starts a {@link ReceiverStandIn} of the transport, and publishes to it a synthetic workload, of the size of
+ * the smart home events, from a number of producer threads, first a warm up and then the measured events. The
+ * throughput is taken from the start of the measured publishing until the receiver has received all of the measured
+ * events, and the latency of each event is taken from its publishing to its receipt. The result is printed as a
+ * single line starting with {@link #RESULT_PREFIX}, unless the warm up or the measured events are not all received
+ * within the timeout, in which case the run exits with a non-zero code instead.
+ */
+public class BenchmarkRun {
+
+    static final String RESULT_PREFIX = "RESULT";
+
+    static final String STREAM_NAME = "org.wso2.das.sample.transport.benchmark";
+
+    static final String STREAM_VERSION = "1.0.0";
+
+    private static final String[] CITIES = {"New York", "Los Angeles", "Chicago", "Dallas", "Miami", "Salt Lake City",
+            "Seattle", "Phoenix", "San Francisco", "Indianapolis"};
+
+    private static final String[] STATES = {"New York", "California", "Illinois", "Texas", "Florida", "Utah",
+            "Washington", "Arizona", "California", "Indiana"};
+
+    public static void main(String[] args) throws Exception {
+        PropertyConfigurator.configure(new File(SampleAgentUtils.getDataAgentConfigPath()).getParent() +
+                File.separator + "log4j.properties");
+        /* the receiver stand-in serves the secure port with the key store of the server */
+        setDefaultProperty("javax.net.ssl.keyStore", "../../repository/resources/security/wso2carbon.jks");
+        setDefaultProperty("javax.net.ssl.keyStorePassword", "wso2carbon");
+        setDefaultProperty("javax.net.ssl.trustStore", "../../repository/resources/security/client-truststore.jks");
+        setDefaultProperty("javax.net.ssl.trustStorePassword", "wso2carbon");
+        String type = SampleAgentUtils.getProperty("type", "Thrift");
+        int batchSize = Integer.parseInt(SampleAgentUtils.getProperty("batchSize", "200"));
+        int queueSize = Integer.parseInt(SampleAgentUtils.getProperty("queueSize", "32768"));
+        int corePoolSize = Integer.parseInt(SampleAgentUtils.getProperty("corePoolSize", "5"));
+        final long events = Long.parseLong(SampleAgentUtils.getProperty("events", "500000"));
+        long warmupEvents = Long.parseLong(SampleAgentUtils.getProperty("warmupEvents", "50000"));
+        int threads = Integer.parseInt(SampleAgentUtils.getProperty("threads", "4"));
+        long timeout = Long.parseLong(SampleAgentUtils.getProperty("timeout", "300"));
+        int port = Integer.parseInt(SampleAgentUtils.getProperty("port", "0"));
+        String host = SampleAgentUtils.getProperty("host", "localhost");
+
+        File agentConfig = writeAgentConfig(type, batchSize, queueSize, corePoolSize);
+        AgentHolder.setConfigPath(agentConfig.getAbsolutePath());
+        ReceiverStandIn receiver = new ReceiverStandIn(type, host, port, port + PublisherHarness.SECURE_PORT_OFFSET,
+                getDataBridgeConfigPath());
+        StreamDefinition streamDefinition = new StreamDefinition(STREAM_NAME, STREAM_VERSION);
+        streamDefinition.addPayloadData("sent_nanos", AttributeType.LONG);
+        streamDefinition.addPayloadData("house_id", AttributeType.INT);
+        streamDefinition.addPayloadData("metro_area", AttributeType.STRING);
+        streamDefinition.addPayloadData("state", AttributeType.STRING);
+        streamDefinition.addPayloadData("power_reading", AttributeType.FLOAT);
+        streamDefinition.addPayloadData("is_peak", AttributeType.BOOL);
+        receiver.addStreamDefinition(streamDefinition);
+        receiver.start();
+
+        final DataPublisher publisher = new DataPublisher(type, "tcp://" + host + ":" + port,
+                "ssl://" + host + ":" + (port + PublisherHarness.SECURE_PORT_OFFSET), "admin", "admin");
+        final String streamId = streamDefinition.getStreamId();
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+
+        publish(publisher, streamId, warmupEvents, threads);
+        if (!receiver.awaitEvents(warmupEvents, timeoutMillis)) {
+            /* the late warm-up events would be counted in the measured run */
+            System.out.println("Only " + receiver.getReceivedCount() + " of " + warmupEvents +
+                    " warm-up events were received within " + timeout + " seconds");
+            publisher.shutdown();
+            receiver.stop();
+            System.exit(1);
+        }
+        receiver.reset();
+
+        long startNanos = System.nanoTime();
+        publish(publisher, streamId, events, threads);
+        if (!receiver.awaitEvents(events, timeoutMillis)) {
+            /* the throughput and latencies of a partial run are not comparable to the ones of the complete runs */
+            System.out.println("Only " + receiver.getReceivedCount() + " of " + events +
+                    " events were received within " + timeout + " seconds");
+            publisher.shutdown();
+            receiver.stop();
+            System.exit(1);
+        }
+        long elapsedNanos = receiver.getLastReceivedNanos() - startNanos;
+        long received = receiver.getReceivedCount();
+        LatencyHistogram latencies = receiver.getLatencies();
+
+        System.out.println(RESULT_PREFIX + "\t" + type + "\t" + batchSize + "\t" + queueSize + "\t" + corePoolSize +
+                "\t" + received + "\t" + (elapsedNanos <= 0 ? 0 : received / (elapsedNanos / 1e9)) +
+                "\t" + latencies.getValueAtPercentile(50) + "\t" + latencies.getValueAtPercentile(99) +
+                "\t" + latencies.getValueAtPercentile(99.9) + "\t" + latencies.getMax());
+        publisher.shutdown();
+        receiver.stop();
+        /* the threads of the data bridge do not stop on their own */
+        System.exit(0);
+    }
+
+    /**
+     * Sets the given system property, unless it has been given on the command line.
+     */
+    private static void setDefaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /**
+     * Publishes the given number of events from the given number of producer threads, and waits for them to finish.
+     */
+    private static void publish(final DataPublisher publisher, final String streamId, long count, int threads)
+            throws InterruptedException {
+        Thread[] producers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final long share = count / threads + (i < count % threads ? 1 : 0);
+            producers[i] = new Thread("BenchmarkProducer-" + i) {
+                @Override
+                public void run() {
+                    Random random = ThreadLocalRandom.current();
+                    for (long j = 0; j < share; j++) {
+                        int idx = random.nextInt(CITIES.length);
+                        publisher.publish(new Event(streamId, System.currentTimeMillis(), null, null, new Object[]{
+                                System.nanoTime(),
+                                random.nextInt(21) + 1,
+                                CITIES[idx],
+                                STATES[idx],
+                                random.nextFloat() * 1000,
+                                random.nextBoolean()
+                        }));
+                    }
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    /**
+     * Writes a copy of the data agent configuration of the sample, with the given settings for the agent of the given
+     * type, to a temporary file. The other agents are left as they are.
+     */
+    private static File writeAgentConfig(String type, int batchSize, int queueSize, int corePoolSize)
+            throws IOException {
+        String configPath = SampleAgentUtils.getDataAgentConfigPath();
+        String config = new String(Files.readAllBytes(new File(configPath).toPath()), StandardCharsets.UTF_8);
+        int maxPoolSize = SampleAgentUtils.getAgentConfigValue(configPath, type, "MaxPoolSize", corePoolSize);
+        Pattern name = Pattern.compile("<Name>\\s*" + Pattern.quote(type) + "\\s*</Name>");
+        Matcher agents = Pattern.compile("<Agent>.*?</Agent>", Pattern.DOTALL).matcher(config);
+        StringBuffer result = new StringBuffer();
+        boolean found = false;
+        while (agents.find()) {
+            String agent = agents.group();
+            if (name.matcher(agent).find()) {
+                agent = setElement(agent, "BatchSize", batchSize);
+                agent = setElement(agent, "QueueSize", queueSize);
+                agent = setElement(agent, "CorePoolSize", corePoolSize);
+                /* the pool of the publishing workers cannot be smaller than its core */
+                agent = setElement(agent, "MaxPoolSize", Math.max(maxPoolSize, corePoolSize));
+                found = true;
+            }
+            agents.appendReplacement(result, Matcher.quoteReplacement(agent));
+        }
+        agents.appendTail(result);
+        if (!found) {
+            throw new IOException("No " + type + " agent is configured in " + configPath);
+        }
+        config = result.toString();
+        File file = File.createTempFile("data-agent-conf-", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), config.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String setElement(String config, String element, int value) {
+        Matcher matcher = Pattern.compile("<" + element + ">\\s*\\d+\\s*</" + element + ">").matcher(config);
+        return matcher.replaceAll("<" + element + ">" + value + "</" + element + ">");
+    }
+
+    private static String getDataBridgeConfigPath() {
+        return new File(SampleAgentUtils.getDataAgentConfigPath()).getParent() + File.separator +
+                "data-bridge-config.xml";
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.transportbenchmark.sample;
+
+import org.wso2.carbon.das.sample.commons.LatencyHistogram;
+import org.wso2.carbon.databridge.commons.Credentials;
+import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.databridge.core.AgentCallback;
+import org.wso2.carbon.databridge.core.DataBridge;
+import org.wso2.carbon.databridge.core.Utils.AgentSession;
+import org.wso2.carbon.databridge.core.definitionstore.InMemoryStreamDefinitionStore;
+import org.wso2.carbon.databridge.core.exception.DataBridgeException;
+import org.wso2.carbon.databridge.core.exception.StreamDefinitionStoreException;
+import org.wso2.carbon.databridge.core.internal.authentication.AuthenticationHandler;
+import org.wso2.carbon.databridge.receiver.binary.conf.BinaryDataReceiverConfiguration;
+import org.wso2.carbon.databridge.receiver.binary.internal.BinaryDataReceiver;
+import org.wso2.carbon.databridge.receiver.thrift.ThriftDataReceiver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for the data bridge receiver of a DAS server, which runs the Thrift or the Binary receiver of the
+ * data bridge on an in memory stream definition store, accepts any credentials, and drops the events it receives
+ * after counting them.
+ * <p/>
+ * The first payload value of the events is expected to be the {@link System#nanoTime()} they were published at, from
+ * which the latency of each event from the publisher to the receiver is recorded.
+ */
+public class ReceiverStandIn {
+
+    private static final int SUPER_TENANT_ID = -1234;
+
+    private final String type;
+
+    private final String host;
+
+    private final int port;
+
+    private final int securePort;
+
+    private final DataBridge dataBridge;
+
+    private final InMemoryStreamDefinitionStore streamDefinitionStore = new InMemoryStreamDefinitionStore();
+
+    private ThriftDataReceiver thriftDataReceiver;
+
+    private BinaryDataReceiver binaryDataReceiver;
+
+    private LatencyHistogram latencies = new LatencyHistogram();
+
+    private long receivedCount;
+
+    private long lastReceivedNanos;
+
+    /**
+     * @param type                 the transport of the receiver, "Thrift" or "Binary"
+     * @param dataBridgeConfigPath the data bridge configuration, which sets the worker threads and the event buffer
+     *                             capacity of the receiver
+     */
+    public ReceiverStandIn(String type, String host, int port, int securePort, String dataBridgeConfigPath) {
+        if (!type.equals("Thrift") && !type.equals("Binary")) {
+            throw new IllegalArgumentException("Unknown receiver type '" + type + "', expected 'Thrift' or 'Binary'");
+        }
+        this.type = type;
+        this.host = host;
+        this.port = port;
+        this.securePort = securePort;
+        this.dataBridge = new DataBridge(new AuthenticationHandler() {
+            @Override
+            public boolean authenticate(String userName, String password) {
+                return true;
+            }
+
+            @Override
+            public String getTenantDomain(String userName) {
+                return "carbon.super";
+            }
+
+            @Override
+            public int getTenantId(String tenantDomain) {
+                return SUPER_TENANT_ID;
+            }
+
+            @Override
+            public void initContext(AgentSession agentSession) {
+            }
+
+            @Override
+            public void destroyContext(AgentSession agentSession) {
+            }
+        }, this.streamDefinitionStore, dataBridgeConfigPath);
+        this.dataBridge.subscribe(new AgentCallback() {
+            @Override
+            public void definedStream(StreamDefinition streamDefinition, int tenantId) {
+            }
+
+            @Override
+            public void removeStream(StreamDefinition streamDefinition, int tenantId) {
+            }
+
+            @Override
+            public void receive(List<Event> events, Credentials credentials) {
+                received(events);
+            }
+        });
+    }
+
+    public void addStreamDefinition(StreamDefinition streamDefinition) throws StreamDefinitionStoreException {
+        this.streamDefinitionStore.saveStreamDefinitionToStore(streamDefinition, SUPER_TENANT_ID);
+    }
+
+    public void start() throws DataBridgeException, IOException {
+        if (this.type.equals("Thrift")) {
+            /* the secure port of the Thrift receiver is its port plus 100 */
+            this.thriftDataReceiver = new ThriftDataReceiver(this.port, this.dataBridge);
+            this.thriftDataReceiver.start(this.host);
+        } else {
+            this.binaryDataReceiver = new BinaryDataReceiver(new BinaryDataReceiverConfiguration(this.securePort,
+                    this.port), this.dataBridge);
+            this.binaryDataReceiver.start();
+        }
+    }
+
+    public void stop() {
+        if (this.thriftDataReceiver != null) {
+            this.thriftDataReceiver.stop();
+        }
+        if (this.binaryDataReceiver != null) {
+            this.binaryDataReceiver.stop();
+        }
+    }
+
+    /**
+     * Waits until the given number of events has been received since the last reset, or the given timeout passes,
+     * and returns whether the events have been received.
+     */
+    public synchronized boolean awaitEvents(long count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long remaining;
+        while (this.receivedCount < count && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return this.receivedCount >= count;
+    }
+
+    /**
+     * Resets the received event count and the latencies, e.g. at the end of the warm up.
+     */
+    public synchronized void reset() {
+        this.receivedCount = 0;
+        this.latencies = new LatencyHistogram();
+    }
+
+    public synchronized long getReceivedCount() {
+        return this.receivedCount;
+    }
+
+    public synchronized long getLastReceivedNanos() {
+        return this.lastReceivedNanos;
+    }
+
+    public synchronized LatencyHistogram getLatencies() {
+        return this.latencies.copy();
+    }
+
+    /**
+     * Records the events of a batch, under the lock of the receiver, which the receiver worker threads take once per
+     * batch.
+     */
+    private synchronized void received(List<Event> events) {
+        long now = System.nanoTime();
+        for (Event event : events) {
+            Object[] payload = event.getPayloadData();
+            if (payload != null && payload.length > 0 && payload[0] instanceof Long) {
+                this.latencies.record(now - (Long) payload[0]);
+            }
+        }
+        this.receivedCount += events.size();
+        this.lastReceivedNanos = now;
+        this.notifyAll();
+    }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.transportbenchmark.sample;
+
+import org.wso2.carbon.das.sample.commons.SampleAgentUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Benchmark of the Thrift and the Binary transports of the data agent, which runs the same synthetic workload over
+ * each transport, for each combination of the given BatchSize, QueueSize and CorePoolSize data agent settings, and
+ * prints the throughput and the latency of the runs side by side.
+ * <p/>
+ * Each run is a {@link BenchmarkRun} in a JVM of its own, publishing to a {@link ReceiverStandIn} of the transport,
+ * so that the runs do not share the data agent configuration, the JIT compilation or the garbage of each other.
+ */
+public class TransportBenchmark {
+
+    public static final int DEFAULT_THRIFT_PORT = 7621;
+
+    public static final int DEFAULT_BINARY_PORT = 9621;
+
+    private static final String[] FORWARDED_PROPERTIES = {"events", "warmupEvents", "threads", "timeout", "host"};
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Starting DAS Transport Benchmark");
+        String[] transports = SampleAgentUtils.getProperty("transports", "Thrift,Binary").split(",");
+        String[] batchSizes = SampleAgentUtils.getProperty("batchSizes", "100,200,500").split(",");
+        String[] queueSizes = SampleAgentUtils.getProperty("queueSizes", "8192,32768").split(",");
+        String[] corePoolSizes = SampleAgentUtils.getProperty("corePoolSizes", "1,5,10").split(",");
+        String results = SampleAgentUtils.getProperty("benchmarkResults", null);
+
+        /* the results of each configuration, by transport */
+        Map<String, Map<String, String[]>> configurations = new LinkedHashMap<>();
+        for (String batchSize : batchSizes) {
+            for (String queueSize : queueSizes) {
+                for (String corePoolSize : corePoolSizes) {
+                    String configuration = batchSize.trim() + "\t" + queueSize.trim() + "\t" + corePoolSize.trim();
+                    Map<String, String[]> transportResults = new LinkedHashMap<>();
+                    for (String transport : transports) {
+                        System.out.println("Running " + transport.trim() + " with BatchSize " + batchSize.trim() +
+                                ", QueueSize " + queueSize.trim() + ", CorePoolSize " + corePoolSize.trim());
+                        transportResults.put(transport.trim(), run(transport.trim(), batchSize.trim(),
+                                queueSize.trim(), corePoolSize.trim()));
+                    }
+                    configurations.put(configuration, transportResults);
+                }
+            }
+        }
+        printTables(transports, configurations);
+        if (results != null) {
+            writeResults(new File(results), configurations);
+        }
+    }
+
+    /**
+     * Forks a benchmark run, and returns its result fields, or null if it failed.
+     */
+    private static String[] run(String transport, String batchSize, String queueSize, String corePoolSize)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        String jvmArgs = SampleAgentUtils.getProperty("jvmArgs", null);
+        if (jvmArgs != null) {
+            for (String jvmArg : jvmArgs.trim().split("\\s+")) {
+                command.add(jvmArg);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dtype=" + transport);
+        command.add("-DbatchSize=" + batchSize);
+        command.add("-DqueueSize=" + queueSize);
+        command.add("-DcorePoolSize=" + corePoolSize);
+        command.add("-Dport=" + (transport.equals("Binary") ?
+                SampleAgentUtils.getProperty("binaryPort", String.valueOf(DEFAULT_BINARY_PORT)) :
+                SampleAgentUtils.getProperty("thriftPort", String.valueOf(DEFAULT_THRIFT_PORT))));
+        for (String property : FORWARDED_PROPERTIES) {
+            String value = SampleAgentUtils.getProperty(property, null);
+            if (value != null) {
+                command.add("-D" + property + "=" + value);
+            }
+        }
+        command.add(BenchmarkRun.class.getName());
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+        String[] result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(BenchmarkRun.RESULT_PREFIX + "\t")) {
+                    result = line.split("\t");
+                } else {
+                    System.out.println("    " + line);
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (result == null || exitCode != 0) {
+            result = null;
+            System.out.println("The " + transport + " run failed with exit code " + exitCode);
+        }
+        return result;
+    }
+
+    private static void printTables(String[] transports, Map<String, Map<String, String[]>> configurations) {
+        StringBuilder header = new StringBuilder(String.format(Locale.ENGLISH, "%10s %10s %13s", "BatchSize",
+                "QueueSize", "CorePoolSize"));
+        for (String transport : transports) {
+            header.append(String.format(Locale.ENGLISH, " %26s", transport.trim()));
+        }
+        System.out.println();
+        System.out.println("Throughput (events/s)");
+        System.out.println(header);
+        for (Map.Entry<String, Map<String, String[]>> entry : configurations.entrySet()) {
+            StringBuilder row = configurationColumns(entry.getKey());
+            for (String[] result : entry.getValue().values()) {
+                row.append(String.format(Locale.ENGLISH, " %26s", result == null ? "failed" :
+                        String.format(Locale.ENGLISH, "%.0f", Double.parseDouble(result[6]))));
+            }
+            System.out.println(row);
+        }
+        System.out.println();
+        System.out.println("Latency p50 / p99 / p99.9 (ms)");
+        System.out.println(header);
+        for (Map.Entry<String, Map<String, String[]>> entry : configurations.entrySet()) {
+            StringBuilder row = configurationColumns(entry.getKey());
+            for (String[] result : entry.getValue().values()) {
+                row.append(String.format(Locale.ENGLISH, " %26s", result == null ? "failed" :
+                        String.format(Locale.ENGLISH, "%.3f / %.3f / %.3f", millis(result[7]), millis(result[8]),
+                                millis(result[9]))));
+            }
+            System.out.println(row);
+        }
+    }
+
+    private static StringBuilder configurationColumns(String configuration) {
+        String[] settings = configuration.split("\t");
+        return new StringBuilder(String.format(Locale.ENGLISH, "%10s %10s %13s", settings[0], settings[1],
+                settings[2]));
+    }
+
+    /**
+     * Writes the results as CSV, a line per run, so that benchmarks can be compared across versions and hosts.
+     */
+    private static void writeResults(File file, Map<String, Map<String, String[]>> configurations)
+            throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("transport,batchSize,queueSize,corePoolSize,events,throughput,p50Nanos,p99Nanos," +
+                    "p999Nanos,maxNanos");
+            for (Map<String, String[]> transportResults : configurations.values()) {
+                for (String[] result : transportResults.values()) {
+                    if (result == null) {
+                        continue;
+                    }
+                    StringBuilder line = new StringBuilder();
+                    for (int i = 1; i < result.length; i++) {
+                        line.append(i > 1 ? "," : "").append(result[i]);
+                    }
+                    writer.println(line);
+                }
+            }
+        }
+        System.out.println("Benchmark results written to " + file.getAbsolutePath());
+    }
+
+    private static double millis(String nanos) {
+        return Long.parseLong(nanos) / 1e6;
+    }
+
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.wikipedia.sample;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.das.sample.commons.PublisherMetrics;
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the pages of a multistream bzip2 Wikipedia dump, decompressing and parsing its streams in parallel.
+ * <p/>
+ * A multistream dump is a concatenation of independent bzip2 streams of 100 pages each, and its index file lists the
+ * byte offset of the stream of every page as "offset:pageId:title" lines. The distinct offsets are read from the
+ * index, and each stream is read with positional reads of the shared file channel, decompressed and parsed on its own
+ * worker. The header and the footer of the dump are in streams of their own which are not in the index, so every
+ * indexed stream is parsed as a sequence of pages wrapped in a synthetic root element.
+ * <p/>
+ * When the pages are to be published in dump order, the workers hand their payloads back to the calling thread,
+ * which publishes the streams in the order they were submitted. Otherwise the workers publish straight to the shared
+ * {@link PublisherHarness}. In both cases, at most a few streams per worker are in flight at a time, which is reported
+ * as the queue depth of the metrics.
+ */
+public class MultistreamDumpProcessor {
+
+    private static final int STREAMS_IN_FLIGHT_PER_WORKER = 4;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] STREAM_PREFIX = ("<mediawiki xmlns=\"" + WikipediaPageReader.NS + "\">")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] STREAM_SUFFIX = "</mediawiki>".getBytes(StandardCharsets.UTF_8);
+
+    private final PublisherHarness harness;
+
+    private final String streamId;
+
+    private final int workers;
+
+    private final boolean ordered;
+
+    private final AtomicLong published = new AtomicLong();
+
+    private final AtomicInteger streamsInFlight = new AtomicInteger();
+
+    public MultistreamDumpProcessor(PublisherHarness harness, String streamId, int workers, boolean ordered) {
+        this.harness = harness;
+        this.streamId = streamId;
+        this.workers = workers;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Reads the distinct stream offsets of a multistream dump from its index file, which may itself be bzip2
+     * compressed.
+     *
+     * @return the stream offsets, in ascending order
+     */
+    public static long[] readStreamOffsets(File indexFile) throws IOException {
+        long[] offsets = new long[1024];
+        int count = 0;
+        /* the file is a resource of its own, so it is closed even if the bzip2 header cannot be read */
+        try (InputStream fileIn = new FileInputStream(indexFile);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(indexFile.getName().endsWith(".bz2") ?
+                     new BZip2CompressorInputStream(fileIn, true) : fileIn, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+                long offset = Long.parseLong(line.substring(0, separator));
+                if (count > 0 && offsets[count - 1] == offset) {
+                    continue;
+                }
+                if (count > 0 && offsets[count - 1] > offset) {
+                    throw new IOException("Stream offsets are not in ascending order in index file '" +
+                            indexFile + "' at offset " + offset);
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = offset;
+            }
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Publishes the pages of the given dump, up to the given count.
+     *
+     * @return the number of pages published
+     */
+    public long process(File dumpFile, File indexFile, long count) throws IOException, InterruptedException {
+        long[] offsets = readStreamOffsets(indexFile);
+        System.out.println("Read " + offsets.length + " stream offset(s) from the index, processing the dump with " +
+                this.workers + " worker(s), " + (this.ordered ? "in dump order" : "unordered") + ".");
+        ExecutorService executor = Executors.newFixedThreadPool(this.workers);
+        Deque<Future<StreamResult>> pending = new ArrayDeque<>();
+        int maxPending = this.workers * STREAMS_IN_FLIGHT_PER_WORKER;
+        PublisherMetrics metrics = this.harness.getMetrics();
+        metrics.setTotalBytes(dumpFile.length());
+        metrics.setQueueDepthGauge(new PublisherMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return streamsInFlight.get();
+            }
+        });
+        try (FileChannel channel = FileChannel.open(dumpFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            for (int i = 0; i < offsets.length && this.published.get() < count; i++) {
+                long end = i + 1 < offsets.length ? offsets[i + 1] : fileSize;
+                this.streamsInFlight.incrementAndGet();
+                pending.add(executor.submit(new StreamTask(channel, offsets[i], end, count)));
+                if (pending.size() >= maxPending) {
+                    this.complete(pending.poll(), count);
+                }
+            }
+            while (!pending.isEmpty()) {
+                this.complete(pending.poll(), count);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return Math.min(this.published.get(), count);
+    }
+
+    private void complete(Future<StreamResult> future, long count) throws IOException, InterruptedException {
+        StreamResult result;
+        try {
+            result = future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new IOException("Error in processing Wikipedia dump stream: " + cause.getMessage(), cause);
+        }
+        if (result.payloads != null) {
+            for (Object[] payload : result.payloads) {
+                if (this.published.get() >= count) {
+                    break;
+                }
+                this.publish(payload);
+                this.published.incrementAndGet();
+            }
+        }
+        this.streamsInFlight.decrementAndGet();
+        this.harness.getMetrics().bytesProcessed(result.compressedLength);
+    }
+
+    private void publish(Object[] payload) {
+        this.harness.publish(new Event(this.streamId, System.currentTimeMillis(), null, null, payload));
+    }
+
+    /**
+     * The outcome of a processed stream, the payloads are only kept when the pages are published in dump order.
+     */
+    private static class StreamResult {
+
+        private final long compressedLength;
+
+        private final List<Object[]> payloads;
+
+        private StreamResult(long compressedLength, List<Object[]> payloads) {
+            this.compressedLength = compressedLength;
+            this.payloads = payloads;
+        }
+
+    }
+
+    /**
+     * Decompresses and parses a single bzip2 stream of the dump.
+     */
+    private class StreamTask implements Callable<StreamResult> {
+
+        private final FileChannel channel;
+
+        private final long start;
+
+        private final long end;
+
+        private final long count;
+
+        private StreamTask(FileChannel channel, long start, long end, long count) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.count = count;
+        }
+
+        @Override
+        public StreamResult call() throws Exception {
+            List<Object[]> payloads = ordered ? new ArrayList<Object[]>() : null;
+            InputStream pages = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                    new ByteArrayInputStream(STREAM_PREFIX),
+                    new BZip2CompressorInputStream(new ChannelRangeInputStream(this.channel, this.start, this.end)),
+                    new ByteArrayInputStream(STREAM_SUFFIX))));
+            try (WikipediaPageReader pageReader = new WikipediaPageReader(pages)) {
+                Object[] payload;
+                while ((payload = pageReader.nextPage()) != null) {
+                    if (ordered) {
+                        payloads.add(payload);
+                    } else {
+                        /* reserve the slot first, so that the count is never exceeded by the concurrent workers */
+                        if (published.incrementAndGet() > this.count) {
+                            break;
+                        }
+                        publish(payload);
+                    }
+                }
+            }
+            return new StreamResult(this.end - this.start, payloads);
+        }
+
+    }
+
+    /**
+     * Buffered input stream over a byte range of a file channel, which uses positional reads so that the channel
+     * can be shared by the concurrent workers.
+     */
+    private static class ChannelRangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer;
+
+        private long position;
+
+        private final long end;
+
+        private ChannelRangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, Math.max(end - start, 1)));
+            this.buffer.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!this.buffer.hasRemaining() && !this.fill()) {
+                return -1;
+            }
+            return this.buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining() && !this.fill()) {
+                return -1;
+            }
+            int n = Math.min(length, this.buffer.remaining());
+            this.buffer.get(b, offset, n);
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            if (this.position >= this.end) {
+                return false;
+            }
+            this.buffer.clear();
+            this.buffer.limit((int) Math.min(this.buffer.capacity(), this.end - this.position));
+            int n = this.channel.read(this.buffer, this.position);
+            this.buffer.flip();
+            if (n <= 0) {
+                return false;
+            }
+            this.position += n;
+            return true;
+        }
+
+    }
+
+}
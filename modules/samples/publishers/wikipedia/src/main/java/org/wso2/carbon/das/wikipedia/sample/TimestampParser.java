@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.wikipedia.sample;
+
+import java.text.ParseException;
+
+/**
+ * Parser of the fixed layout ISO-8601 UTC timestamps of Wikipedia dumps, i.e. "yyyy-MM-dd'T'HH:mm:ss'Z'".
+ * <p/>
+ * The digits are decoded straight into epoch milliseconds, without any intermediate objects or calendar, so the
+ * parser allocates nothing unless the timestamp is malformed, and being stateless, it can be shared by any number of
+ * threads.
+ */
+public final class TimestampParser {
+
+    private static final int LENGTH = 20;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final int[] DAYS_BEFORE_MONTH = { 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334 };
+
+    private TimestampParser() {
+    }
+
+    /**
+     * Parses the given timestamp.
+     *
+     * @param value the timestamp, e.g. "2015-08-05T12:36:02Z"
+     * @return the timestamp in milliseconds since the epoch
+     * @throws ParseException if the timestamp is not in the expected layout or has an out of range field
+     */
+    public static long parse(CharSequence value) throws ParseException {
+        if (value.length() != LENGTH || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T' ||
+                value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != 'Z') {
+            throw error(value, 0);
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        if (month < 1 || month > 12) {
+            throw error(value, 5);
+        }
+        if (day < 1 || day > daysInMonth(year, month)) {
+            throw error(value, 8);
+        }
+        if (hour > 23) {
+            throw error(value, 11);
+        }
+        if (minute > 59) {
+            throw error(value, 14);
+        }
+        if (second > 59) {
+            throw error(value, 17);
+        }
+        long days = daysSinceEpoch(year, month, day);
+        return days * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L;
+    }
+
+    private static int digits(CharSequence value, int offset, int count) throws ParseException {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw error(value, i);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return isLeapYear(year) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to the given date of the proleptic Gregorian calendar.
+     */
+    private static long daysSinceEpoch(int year, int month, int day) {
+        long y = year - 1;
+        long days = 365 * y + y / 4 - y / 100 + y / 400 + DAYS_BEFORE_MONTH[month - 1] + day - 1;
+        if (month > 2 && isLeapYear(year)) {
+            days++;
+        }
+        /* the number of days from 0001-01-01 to 1970-01-01 */
+        return days - 719162;
+    }
+
+    private static ParseException error(CharSequence value, int offset) {
+        return new ParseException("Invalid timestamp '" + value + "', expected yyyy-MM-dd'T'HH:mm:ss'Z'", offset);
+    }
+
+}
@@ -15,26 +15,16 @@
  */
 package org.wso2.carbon.das.wikipedia.sample;
 
-import org.apache.axiom.om.OMElement;
-import org.apache.axiom.om.OMXMLBuilderFactory;
-import org.wso2.carbon.databridge.agent.AgentHolder;
-import org.wso2.carbon.databridge.agent.DataPublisher;
-import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.das.sample.commons.PayloadSource;
+import org.wso2.carbon.das.sample.commons.PublisherHarness;
+import org.wso2.carbon.das.sample.commons.PublisherMetrics;
+import org.wso2.carbon.das.sample.commons.SampleAgentUtils;
 import org.wso2.carbon.databridge.commons.utils.DataBridgeCommonsUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Enumeration;
-import java.util.concurrent.atomic.AtomicLong;
-
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLStreamReader;
+import java.nio.channels.FileChannel;
 
 /**
  * This class represents a data agent that will publish wikipedia articles from a full wikipedia dump, as events.
@@ -43,15 +33,7 @@ public class WikipediaDataAgent {
     
     private static final String WIKIPEDIA_DATA_STREAM = "org.wso2.das.sample.wikipedia.data";
     
-    private static final String NS = "http://www.mediawiki.org/xml/export-0.10/";
-    
     private static final String VERSION = "1.0.0";
-    
-    private static final int defaultThriftPort = 7611;
-    
-    private static final int defaultBinaryPort = 9611;
-    
-    private static final SimpleDateFormat tsFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
 
     public static void main(String[] args) throws Exception {
         System.out.println("Starting DAS Wikipedia Data Agent");
@@ -59,21 +41,6 @@ public class WikipediaDataAgent {
         System.setProperty("javax.net.ssl.trustStore", currentDir + "/src/main/resources/client-truststore.jks");
         System.setProperty("javax.net.ssl.trustStorePassword", "wso2carbon");
 
-        AgentHolder.setConfigPath(getDataAgentConfigPath());
-        String host = getLocalAddress().getHostAddress();
-
-        String type = getProperty("type", "Thrift");
-        int receiverPort = defaultThriftPort;
-        if (type.equals("Binary")) {
-            receiverPort = defaultBinaryPort;
-        }
-        int securePort = receiverPort + 100;
-
-        String url = getProperty("url", "tcp://" + host + ":" + receiverPort);
-        String authURL = getProperty("authURL", "ssl://" + host + ":" + securePort);
-        String username = getProperty("username", "admin");
-        String password = getProperty("password", "admin");
-
         String path;
         if (args.length == 0 || args[0] == null || args[0].isEmpty()) {
             System.out.println("Usage: WikipediaDataAgent <path> [count]");
@@ -92,164 +59,69 @@ public class WikipediaDataAgent {
             }
         }
 
-        DataPublisher dataPublisher = new DataPublisher(type, url, authURL, username, password);
+        PublisherHarness harness = PublisherHarness.fromSystemProperties("WikipediaDataAgent");
         String streamId = DataBridgeCommonsUtils.generateStreamId(WIKIPEDIA_DATA_STREAM, VERSION);
-        publishEvents(dataPublisher, streamId, path, count);
+        harness.start();
         try {
-            Thread.sleep(2000);
-        } catch (InterruptedException ignore) { /* ignore */ }
-        dataPublisher.shutdown();
-    }
-
-    public static String getDataAgentConfigPath() {
-        File filePath = new File("src" + File.separator + "main" + File.separator + "resources");
-        if (!filePath.exists()) {
-            filePath = new File("test" + File.separator + "resources");
-        }
-        if (!filePath.exists()) {
-            filePath = new File("resources");
-        }
-        if (!filePath.exists()) {
-            filePath = new File("test" + File.separator + "resources");
-        }
-        return filePath.getAbsolutePath() + File.separator + "data-agent-conf.xml";
-    }
-
-    public static InetAddress getLocalAddress() throws SocketException, UnknownHostException {
-        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-        while (interfaces.hasMoreElements()) {
-            NetworkInterface iface = interfaces.nextElement();
-            Enumeration<InetAddress> addresses = iface.getInetAddresses();
-            while (addresses.hasMoreElements()) {
-                InetAddress addr = addresses.nextElement();
-                if (addr instanceof Inet4Address && !addr.isLoopbackAddress()) {
-                    return addr;
-                }
+            if (path.endsWith(".bz2")) {
+                String index = SampleAgentUtils.getProperty("index", getMultistreamIndexPath(path));
+                int workers = Integer.parseInt(SampleAgentUtils.getProperty("workers",
+                        String.valueOf(Runtime.getRuntime().availableProcessors())));
+                boolean ordered = Boolean.parseBoolean(SampleAgentUtils.getProperty("ordered", "false"));
+                MultistreamDumpProcessor processor = new MultistreamDumpProcessor(harness, streamId, workers,
+                        ordered);
+                processor.process(new File(path), new File(index), count);
+            } else {
+                publishEvents(harness, streamId, path, count);
             }
+        } finally {
+            harness.shutdown();
         }
-        return InetAddress.getLocalHost();
     }
 
-    private static String getProperty(String name, String def) {
-        String result = System.getProperty(name);
-        if (result == null || result.length() == 0 || result.equals("")) {
-            result = def;
+    /**
+     * Returns the default index file path of a multistream dump, e.g. the dump
+     * "enwiki-20150805-pages-articles-multistream.xml.bz2" has its index in
+     * "enwiki-20150805-pages-articles-multistream-index.txt.bz2".
+     */
+    private static String getMultistreamIndexPath(String path) {
+        int i = path.lastIndexOf(".xml.bz2");
+        if (i < 0) {
+            return path + ".index";
         }
-        return result;
+        return path.substring(0, i) + "-index.txt.bz2";
     }
-    
-    private static void publishEvents(DataPublisher dataPublisher, 
-            String streamId, String path, 
-            long count) throws Exception {
-        long prevDataCount = 0;
-        final AtomicLong dataCount = new AtomicLong();
+
+    private static void publishEvents(PublisherHarness harness, String streamId, String path, long count)
+            throws Exception {
         File file = new File(path);
-        long fileSize = file.length();
-        int progress = 0, tmpProgess;
-        InputStream in = new FileInputStream(file) {
-            @Override
-            public int read() throws IOException {
-                int b = super.read();
-                dataCount.incrementAndGet();
-                return b;
-            }
+        FileInputStream in = new FileInputStream(file);
+        final FileChannel channel = in.getChannel();
+        /* the bytes read are sampled from the file position by the reporter, instead of counted on every read */
+        PublisherMetrics metrics = harness.getMetrics();
+        final long fileSize = file.length();
+        metrics.setTotalBytes(fileSize);
+        metrics.setBytesGauge(new PublisherMetrics.Gauge() {
             @Override
-            public int read(byte[] b) throws IOException {
-                int i = super.read(b);
-                dataCount.addAndGet(i);
-                return i;
+            public long getValue() {
+                try {
+                    return channel.position();
+                } catch (IOException e) {
+                    /* the stream is closed once the whole dump has been read */
+                    return fileSize;
+                }
             }
+        });
+        final WikipediaPageReader pageReader = new WikipediaPageReader(in);
+        long published = harness.publishAll(streamId, null, new PayloadSource() {
             @Override
-            public int read(byte[] b, int offset, int length) throws IOException {
-                int i = super.read(b, offset, length);
-                dataCount.addAndGet(i);
-                return i;
-            }
-        };
-        XMLStreamReader reader = OMXMLBuilderFactory.createOMBuilder(in).getDocument().getXMLStreamReader(false);
-        long i = 0;
-        long start = System.currentTimeMillis();
-        OMElement page;
-        while (reader.hasNext()) {
-            /* get to the start of pages */
-            if (reader.getEventType() == XMLStreamReader.START_ELEMENT &&
-                    reader.getName().equals(new QName(NS, "mediawiki"))) {
-                break;
-            }
-            reader.next();
-        }
-        long tpsStartTS = System.currentTimeMillis();
-        long j = 0;
-        while (reader.hasNext() && i < count) {
-            try {
-                page = OMXMLBuilderFactory.createStAXOMBuilder(reader).getDocumentElement();
-            } catch (Exception e) {
-                /* a hack to detect the end of the document */
-                break;
+            public Object[] nextPayload() throws Exception {
+                return pageReader.nextPage();
             }
-            page.build();
-            if (!page.getQName().getLocalPart().equals("page")) {
-                continue;
-            }
-            Object[] payload = createPayload(page);
-            Event event = new Event(streamId, System.currentTimeMillis(), null, null, payload);
-            dataPublisher.publish(event);
-            i++;
-            tmpProgess = (int) (dataCount.get() / (double) fileSize * 100.0);
-            if (tmpProgess > progress) {
-                progress = tmpProgess;
-                long tpsEndTS = System.currentTimeMillis();
-                double tps = (i - j) / (double) (tpsEndTS - tpsStartTS) * 1000.0;
-                j = i;
-                double dataRate = (dataCount.get() - prevDataCount) / ((1024.0 * 1024.0) * (tpsEndTS - tpsStartTS)) * 1000.0;
-                prevDataCount = dataCount.get();
-                tpsStartTS = tpsEndTS;
-                System.out.println("[" + (new Date()).toString() + "] " + progress + "% -> " + 
-                    (int) (dataCount.get() / (double) (1024 * 1024)) + " MB, Count: " + i + ", TPS: " + tps + 
-                    ", Data Rate: " + dataRate + " MB/s");
-            }
-        }
-        long end = System.currentTimeMillis();
+        }, count);
+        pageReader.close();
         in.close();
-        System.out.println("Published " + i + " Wikipedia page(s) as events in " + (end - start) / 1000.0 + 
-                " seconds, TPS: " + (i / (double) (end - start) * 1000.0) + ".");
-    }
-    
-    private static long timestamp(String tsStr) throws ParseException {
-        return tsFormat.parse(tsStr).getTime();
-    }
-    
-    private static String text(OMElement element) {
-        if (element == null) {
-            return "";
-        } else {
-            return element.getText();
-        }
-    }
-    
-    private static long getLong(String value) {
-        if (value == null || value.isEmpty()) {
-            return 0;
-        } else {
-            return Long.parseLong(value);
-        }
-    }
-    
-    private static Object[] createPayload(OMElement page) throws ParseException {
-        String title = text(page.getFirstChildWithName(new QName(NS, "title")));
-        OMElement revision = page.getFirstChildWithName(new QName(NS, "revision"));
-        String revisionTSStr = text(revision.getFirstChildWithName(new QName(NS, "timestamp")));
-        long revisionTS = timestamp(revisionTSStr);
-        OMElement contributor = revision.getFirstChildWithName(new QName(NS, "contributor"));
-        String contributorUsername = text(contributor.getFirstChildWithName(new QName(NS, "username")));
-        long contributorId = getLong(text(contributor.getFirstChildWithName(new QName(NS, "id"))));
-        String comment = text(revision.getFirstChildWithName(new QName(NS, "comment")));
-        String model = text(revision.getFirstChildWithName(new QName(NS, "model")));
-        String format = text(revision.getFirstChildWithName(new QName(NS, "format")));
-        String text = text(revision.getFirstChildWithName(new QName(NS, "text")));
-        String sha1 = text(revision.getFirstChildWithName(new QName(NS, "sha1")));
-        return new Object[] { sha1, title, revisionTS, contributorUsername, 
-                contributorId, comment, model, format, text, text.length() };
+        System.out.println("Published " + published + " Wikipedia page(s) as events.");
     }
 
 }
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.das.wikipedia.sample;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of the pages of a Wikipedia XML dump, which creates the event payloads of the pages straight
+ * from a StAX cursor.
+ * <p/>
+ * Only the fields needed for the payload are extracted, and no page tree is built. Element names are matched against
+ * static {@link QName}s without creating new names per element, and element text is collected into a single reused
+ * buffer, so the page text is copied only once into the published string. Only the first revision of a page is
+ * read, as in an articles dump. A reader is not thread safe.
+ */
+public class WikipediaPageReader implements Closeable {
+
+    public static final String NS = "http://www.mediawiki.org/xml/export-0.10/";
+
+    private static final QName PAGE = new QName(NS, "page");
+
+    private static final QName TITLE = new QName(NS, "title");
+
+    private static final QName REVISION = new QName(NS, "revision");
+
+    private static final QName TIMESTAMP = new QName(NS, "timestamp");
+
+    private static final QName CONTRIBUTOR = new QName(NS, "contributor");
+
+    private static final QName USERNAME = new QName(NS, "username");
+
+    private static final QName ID = new QName(NS, "id");
+
+    private static final QName COMMENT = new QName(NS, "comment");
+
+    private static final QName MODEL = new QName(NS, "model");
+
+    private static final QName FORMAT = new QName(NS, "format");
+
+    private static final QName TEXT = new QName(NS, "text");
+
+    private static final QName SHA1 = new QName(NS, "sha1");
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final XMLStreamReader reader;
+
+    private final StringBuilder textBuffer = new StringBuilder();
+
+    public WikipediaPageReader(InputStream in) throws XMLStreamException {
+        this.reader = INPUT_FACTORY.createXMLStreamReader(in);
+    }
+
+    /**
+     * The factory is only configured once, and is shared by the readers of the concurrent dump stream workers.
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Reads the next page of the dump.
+     *
+     * @return the event payload of the page, i.e. sha1, title, revision timestamp, contributor username, contributor
+     * id, comment, model, format, text and text length, or null at the end of the dump
+     */
+    public Object[] nextPage() throws XMLStreamException, ParseException {
+        while (this.reader.hasNext()) {
+            if (this.reader.next() == XMLStreamReader.START_ELEMENT && this.isElement(PAGE)) {
+                return this.readPage();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error in closing the Wikipedia dump reader: " + e.getMessage(), e);
+        }
+    }
+
+    private Object[] readPage() throws XMLStreamException, ParseException {
+        String title = "", contributorUsername = "", contributorId = "", comment = "", model = "",
+                format = "", text = "", sha1 = "";
+        long revisionTS = 0;
+        boolean inRevision = false, inContributor = false, revisionRead = false, timestampRead = false;
+        /* the number of open elements, including the page */
+        int depth = 1;
+        while (depth > 0) {
+            int event = this.reader.next();
+            if (event == XMLStreamReader.END_ELEMENT) {
+                depth--;
+                if (inContributor && depth == 2) {
+                    inContributor = false;
+                } else if (inRevision && depth == 1) {
+                    inRevision = false;
+                }
+                continue;
+            }
+            if (event != XMLStreamReader.START_ELEMENT) {
+                continue;
+            }
+            depth++;
+            if (depth == 2) {
+                if (this.isElement(TITLE)) {
+                    title = this.readText();
+                    depth--;
+                } else if (this.isElement(REVISION)) {
+                    if (revisionRead) {
+                        this.skipElement();
+                        depth--;
+                    } else {
+                        inRevision = true;
+                        revisionRead = true;
+                    }
+                }
+            } else if (inRevision && depth == 3) {
+                if (this.isElement(CONTRIBUTOR)) {
+                    inContributor = true;
+                } else if (this.isElement(TIMESTAMP)) {
+                    revisionTS = TimestampParser.parse(this.readTextContent());
+                    timestampRead = true;
+                    depth--;
+                } else if (this.isElement(COMMENT)) {
+                    comment = this.readText();
+                    depth--;
+                } else if (this.isElement(MODEL)) {
+                    model = this.readText();
+                    depth--;
+                } else if (this.isElement(FORMAT)) {
+                    format = this.readText();
+                    depth--;
+                } else if (this.isElement(TEXT)) {
+                    text = this.readText();
+                    depth--;
+                } else if (this.isElement(SHA1)) {
+                    sha1 = this.readText();
+                    depth--;
+                }
+            } else if (inContributor && depth == 4) {
+                if (this.isElement(USERNAME)) {
+                    contributorUsername = this.readText();
+                    depth--;
+                } else if (this.isElement(ID)) {
+                    contributorId = this.readText();
+                    depth--;
+                }
+            }
+        }
+        if (!timestampRead) {
+            throw new ParseException("No revision timestamp in Wikipedia page '" + title + "'", 0);
+        }
+        return new Object[] { sha1, title, revisionTS, contributorUsername,
+                getLong(contributorId), comment, model, format, text, text.length() };
+    }
+
+    private boolean isElement(QName name) {
+        return name.getLocalPart().equals(this.reader.getLocalName()) &&
+                name.getNamespaceURI().equals(this.reader.getNamespaceURI());
+    }
+
+    private String readText() throws XMLStreamException {
+        return this.readTextContent().toString();
+    }
+
+    /**
+     * Reads the text content of the current element into the reused text buffer, leaving the cursor on its end
+     * element.
+     */
+    private CharSequence readTextContent() throws XMLStreamException {
+        this.textBuffer.setLength(0);
+        int depth = 1;
+        while (depth > 0) {
+            switch (this.reader.next()) {
+                case XMLStreamReader.CHARACTERS:
+                case XMLStreamReader.CDATA:
+                case XMLStreamReader.SPACE:
+                    if (depth == 1) {
+                        this.textBuffer.append(this.reader.getTextCharacters(), this.reader.getTextStart(),
+                                this.reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamReader.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return this.textBuffer;
+    }
+
+    /**
+     * Skips the current element and all of its content, leaving the cursor on its end element.
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = this.reader.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static long getLong(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        } else {
+            return Long.parseLong(value);
+        }
+    }
+
+}
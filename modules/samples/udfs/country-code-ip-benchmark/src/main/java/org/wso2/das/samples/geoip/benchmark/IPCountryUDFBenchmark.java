@@ -0,0 +1,210 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.das.samples.geoip.GeoIPBatchResolver;
+import org.wso2.das.samples.geoip.GeoIPCache;
+import org.wso2.das.samples.geoip.GeoIPLookup;
+import org.wso2.das.samples.geoip.IPCountryCodeUDF;
+import org.wso2.das.samples.geoip.IPCountryNameUDF;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the geo IP UDFs, run against a synthetic GeoIP database.
+ * <p/>
+ * The workloads are a skewed one, where a small pool of hot client addresses makes up most of the lookups, and a
+ * uniform one over a large set of random addresses. A cache size of 0 measures the cold cache path, where every call
+ * goes to the database. The batch benchmark resolves both the codes and the names of {@link #BATCH_SIZE} addresses at
+ * a time with a {@link GeoIPBatchResolver}, and is scored per address, so it compares with the sum of the code and
+ * name benchmarks. Build with "mvn clean install -Dbenchmark" and run, for example, with
+ * "java -jar target/benchmarks.jar -prof gc" to also get the allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IPCountryUDFBenchmark {
+
+    private static final int MULTI_THREAD_COUNT = 4;
+
+    private static final int BATCH_SIZE = 1024;
+
+    @Benchmark
+    public String toCountryCode(Workload workload, Cursor cursor) {
+        return workload.codeUDF.toCountryCode(workload.next(cursor));
+    }
+
+    @Benchmark
+    public String toCountryName(Workload workload, Cursor cursor) {
+        return workload.nameUDF.toCountryName(workload.next(cursor));
+    }
+
+    @Benchmark
+    @Threads(MULTI_THREAD_COUNT)
+    public String toCountryCodeMultiThread(Workload workload, Cursor cursor) {
+        return workload.codeUDF.toCountryCode(workload.next(cursor));
+    }
+
+    @Benchmark
+    @Threads(MULTI_THREAD_COUNT)
+    public String toCountryNameMultiThread(Workload workload, Cursor cursor) {
+        return workload.nameUDF.toCountryName(workload.next(cursor));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public String[] resolveBatch(Workload workload, Cursor cursor, Batch batch) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.ips[i] = workload.next(cursor);
+        }
+        batch.resolver.resolve(batch.ips, batch.countryCodes, batch.countryNames);
+        return batch.countryNames;
+    }
+
+    /**
+     * The shared database and address set of a benchmark run.
+     */
+    @State(Scope.Benchmark)
+    public static class Workload {
+
+        @Param({"hot", "uniform"})
+        public String distribution;
+
+        @Param({"10000", "0"})
+        public String cacheSize;
+
+        @Param({GeoIPLookup.BACKEND_MMAP, GeoIPLookup.BACKEND_RANGE_TABLE})
+        public String backend;
+
+        @Param({"20"})
+        public int trieDepth;
+
+        @Param({"1048576"})
+        public int addressCount;
+
+        @Param({"2000"})
+        public int hotAddressCount;
+
+        private String[] addresses;
+
+        private IPCountryCodeUDF codeUDF;
+
+        private IPCountryNameUDF nameUDF;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            File db = SyntheticGeoIPDatabase.create(this.trieDepth, 42);
+            /* the lookup is a JVM wide singleton, created on the first UDF call, and JMH forks a JVM per trial */
+            System.setProperty(GeoIPLookup.DB_FILE_PROPERTY, db.getAbsolutePath());
+            System.setProperty(GeoIPLookup.BACKEND_PROPERTY, this.backend);
+            System.setProperty(GeoIPCache.CACHE_SIZE_PROPERTY, this.cacheSize);
+            Random random = new Random(7);
+            this.addresses = new String[this.addressCount];
+            if ("hot".equals(this.distribution)) {
+                String[] hotAddresses = new String[this.hotAddressCount];
+                for (int i = 0; i < hotAddresses.length; i++) {
+                    hotAddresses[i] = randomAddress(random);
+                }
+                for (int i = 0; i < this.addresses.length; i++) {
+                    /* cubing a uniform value skews the picks towards the head of the hot pool */
+                    double skew = Math.pow(random.nextDouble(), 3);
+                    this.addresses[i] = hotAddresses[(int) (skew * hotAddresses.length)];
+                }
+            } else {
+                for (int i = 0; i < this.addresses.length; i++) {
+                    this.addresses[i] = randomAddress(random);
+                }
+            }
+            this.codeUDF = new IPCountryCodeUDF();
+            this.nameUDF = new IPCountryNameUDF();
+            if (this.codeUDF.toCountryCode(this.addresses[0]) == null) {
+                throw new IOException("Failed to load the synthetic GeoIP database " + db);
+            }
+        }
+
+        private String next(Cursor cursor) {
+            int index = cursor.index;
+            cursor.index = index + 1 == this.addresses.length ? 0 : index + 1;
+            return this.addresses[index];
+        }
+
+        private static String randomAddress(Random random) {
+            int ip = random.nextInt();
+            return ((ip >>> 24) & 0xFF) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+        }
+
+    }
+
+    /**
+     * Per thread position in the address set, threads start at different offsets so that they do not walk the
+     * addresses in lock step.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setup(Workload workload) {
+            this.index = new Random().nextInt(workload.addresses.length);
+        }
+
+    }
+
+    /**
+     * Per thread batch resolver, along with its input and output columns.
+     */
+    @State(Scope.Thread)
+    public static class Batch {
+
+        private final String[] ips = new String[BATCH_SIZE];
+
+        private final String[] countryCodes = new String[BATCH_SIZE];
+
+        private final String[] countryNames = new String[BATCH_SIZE];
+
+        private GeoIPBatchResolver resolver;
+
+        @Setup(Level.Trial)
+        public void setup(Workload workload) throws IOException {
+            /* the workload loads the shared lookup first */
+            this.resolver = new GeoIPBatchResolver();
+        }
+
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Generates a synthetic database in the legacy MaxMind GeoIP country format, so that the benchmarks do not depend on
+ * the sample GeoIP.dat file or on network access.
+ * <p/>
+ * The database is a complete binary trie of the given depth, i.e. the IPv4 space is split into 2^depth equal ranges,
+ * each of them assigned to a random country. Country id 255 is never used, since a record of 0xFFFFFF would be taken
+ * for the structure info delimiter.
+ */
+public final class SyntheticGeoIPDatabase {
+
+    private static final int COUNTRY_BEGIN = 16776960;
+
+    private static final int COUNTRY_EDITION = 1;
+
+    private static final int MAX_COUNTRY_ID = 250;
+
+    private SyntheticGeoIPDatabase() {
+    }
+
+    public static File create(int depth, long seed) throws IOException {
+        File file = File.createTempFile("synthetic-geoip-", ".dat");
+        file.deleteOnExit();
+        write(file, depth, seed);
+        return file;
+    }
+
+    public static void write(File file, int depth, long seed) throws IOException {
+        if (depth < 1 || depth > 24) {
+            throw new IllegalArgumentException("Trie depth must be between 1 and 24: " + depth);
+        }
+        Random random = new Random(seed);
+        int internalNodes = (1 << depth) - 1;
+        int firstLeafParent = (1 << (depth - 1)) - 1;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (int node = 0; node < internalNodes; node++) {
+                for (int branch = 1; branch <= 2; branch++) {
+                    int record;
+                    if (node >= firstLeafParent) {
+                        record = COUNTRY_BEGIN + 1 + random.nextInt(MAX_COUNTRY_ID);
+                    } else {
+                        record = 2 * node + branch;
+                    }
+                    out.write(record & 0xFF);
+                    out.write((record >>> 8) & 0xFF);
+                    out.write((record >>> 16) & 0xFF);
+                }
+            }
+            /* structure info: delimiter followed by the database type */
+            out.write(0xFF);
+            out.write(0xFF);
+            out.write(0xFF);
+            out.write(COUNTRY_EDITION);
+        }
+    }
+
+}
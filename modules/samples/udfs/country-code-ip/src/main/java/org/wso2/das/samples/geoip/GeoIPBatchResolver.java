@@ -0,0 +1,122 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Batch oriented entry points of the geo IP lookup, which resolve a whole column batch of IP addresses to their
+ * country codes and names in a single pass.
+ * <p/>
+ * Every distinct address of a batch is resolved only once, and its code and name are taken from the same lookup. The
+ * de-duplication map and the country id buffer are reused from batch to batch, so a resolver is not thread safe and
+ * is meant to be owned by a single task, e.g. created per partition in a mapPartitions function. The batch methods
+ * are kept out of the UDF classes since the Spark UDF registration only maps scalar argument types.
+ */
+public class GeoIPBatchResolver {
+
+    private final GeoIPLookup lookup;
+
+    private final Map<String, Integer> batchCountryIds = new HashMap<>();
+
+    private int[] countryIdBuffer = new int[0];
+
+    public GeoIPBatchResolver() throws IOException {
+        this(GeoIPLookup.getInstance());
+    }
+
+    public GeoIPBatchResolver(GeoIPLookup lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * Resolves the addresses in ips[offset, offset + length) to country ids, writing them to the same positions of
+     * the countryIds array.
+     *
+     * @return the number of distinct addresses in the batch
+     * @throws IllegalArgumentException if the range is not within the addresses, or the countryIds array is too
+     *                                  short to hold it
+     */
+    public int resolve(String[] ips, int offset, int length, int[] countryIds) {
+        if (offset < 0 || length < 0 || offset > ips.length - length) {
+            throw new IllegalArgumentException("Range [" + offset + ", " + offset + " + " + length +
+                    ") is out of the bounds of the " + ips.length + " addresses");
+        }
+        if (countryIds.length < offset + length) {
+            throw new IllegalArgumentException("The country id array of length " + countryIds.length +
+                    " cannot hold the range [" + offset + ", " + (offset + length) + ")");
+        }
+        this.batchCountryIds.clear();
+        for (int i = offset; i < offset + length; i++) {
+            String ip = ips[i];
+            Integer countryId = this.batchCountryIds.get(ip);
+            if (countryId == null) {
+                countryId = this.lookup.getCountryId(ip);
+                this.batchCountryIds.put(ip, countryId);
+            }
+            countryIds[i] = countryId;
+        }
+        return this.batchCountryIds.size();
+    }
+
+    /**
+     * Resolves the given addresses to both their country codes and names, in one lookup per distinct address.
+     *
+     * @throws IllegalArgumentException if the countryCodes or countryNames array is shorter than the addresses
+     */
+    public void resolve(String[] ips, String[] countryCodes, String[] countryNames) {
+        if (countryCodes.length < ips.length || countryNames.length < ips.length) {
+            throw new IllegalArgumentException("The country code and name arrays of lengths " + countryCodes.length +
+                    " and " + countryNames.length + " cannot hold the " + ips.length + " addresses");
+        }
+        int[] countryIds = this.resolveToBuffer(ips);
+        for (int i = 0; i < ips.length; i++) {
+            countryCodes[i] = this.lookup.getCountryCode(countryIds[i]);
+            countryNames[i] = this.lookup.getCountryName(countryIds[i]);
+        }
+    }
+
+    private int[] resolveToBuffer(String[] ips) {
+        if (this.countryIdBuffer.length < ips.length) {
+            this.countryIdBuffer = new int[ips.length];
+        }
+        this.resolve(ips, 0, ips.length, this.countryIdBuffer);
+        return this.countryIdBuffer;
+    }
+
+    public String[] toCountryCodes(String[] ips) {
+        int[] countryIds = this.resolveToBuffer(ips);
+        String[] countryCodes = new String[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            countryCodes[i] = this.lookup.getCountryCode(countryIds[i]);
+        }
+        return countryCodes;
+    }
+
+    public String[] toCountryNames(String[] ips) {
+        int[] countryIds = this.resolveToBuffer(ips);
+        String[] countryNames = new String[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            countryNames[i] = this.lookup.getCountryName(countryIds[i]);
+        }
+        return countryNames;
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, concurrent LRU cache of resolved country ids, keyed by the IP address string as it appears in the data.
+ * <p/>
+ * The cache is split into a fixed number of segments, each of them an access ordered {@link LinkedHashMap} guarded by
+ * its own lock, so concurrent Spark tasks only contend when they hit the same segment. The hit, miss and eviction
+ * counts are kept per segment too, under its lock, and only summed up when they are read. The size and the time to live
+ * of the entries can be set per executor with the {@link #CACHE_SIZE_PROPERTY} and {@link #CACHE_TTL_PROPERTY}
+ * system properties, a size of 0 disables the cache. As every miss allocates an entry, and evicts one once the cache
+ * is full, the cache is off by default in front of the range table backend, whose lookups do not allocate, see
+ * {@link GeoIPLookup}.
+ */
+public class GeoIPCache {
+
+    public static final String CACHE_SIZE_PROPERTY = "geoip.cache.size";
+
+    public static final String CACHE_TTL_PROPERTY = "geoip.cache.ttl";
+
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /**
+     * Default time to live in seconds, 0 means the entries never expire.
+     */
+    public static final long DEFAULT_CACHE_TTL = 0;
+
+    /**
+     * Value returned by {@link #get(String)} when the address is not in the cache.
+     */
+    public static final int MISS = -1;
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+
+    private final long ttlNanos;
+
+    public GeoIPCache(int maxSize, long ttl, TimeUnit ttlUnit) {
+        this.ttlNanos = ttlUnit.toNanos(ttl);
+        if (maxSize <= 0) {
+            this.segments = new Segment[0];
+        } else {
+            int segmentCount = Math.min(SEGMENT_COUNT, Integer.highestOneBit(maxSize));
+            int segmentSize = (maxSize + segmentCount - 1) / segmentCount;
+            this.segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                this.segments[i] = new Segment(segmentSize);
+            }
+        }
+    }
+
+    /**
+     * Creates a cache sized from the {@link #CACHE_SIZE_PROPERTY} and {@link #CACHE_TTL_PROPERTY} system properties.
+     */
+    public static GeoIPCache fromSystemProperties() {
+        return fromSystemProperties(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a cache sized from the {@link #CACHE_SIZE_PROPERTY} and {@link #CACHE_TTL_PROPERTY} system properties,
+     * with the given size if the former is not set.
+     */
+    public static GeoIPCache fromSystemProperties(int defaultSize) {
+        int maxSize = Integer.getInteger(CACHE_SIZE_PROPERTY, defaultSize);
+        long ttl = Long.getLong(CACHE_TTL_PROPERTY, DEFAULT_CACHE_TTL);
+        return new GeoIPCache(maxSize, ttl, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the cached country id of the given address, or {@link #MISS} if it is not cached or has expired.
+     */
+    public int get(String ip) {
+        if (this.segments.length == 0) {
+            return MISS;
+        }
+        CachedCountry entry;
+        Segment segment = this.segmentFor(ip);
+        synchronized (segment) {
+            entry = segment.get(ip);
+            if (entry != null && this.isExpired(entry)) {
+                segment.remove(ip);
+                entry = null;
+            }
+            if (entry == null) {
+                segment.misses++;
+                return MISS;
+            }
+            segment.hits++;
+        }
+        return entry.countryId;
+    }
+
+    public void put(String ip, int countryId) {
+        if (this.segments.length == 0) {
+            return;
+        }
+        CachedCountry entry = new CachedCountry(countryId, this.ttlNanos > 0 ? System.nanoTime() : 0);
+        Segment segment = this.segmentFor(ip);
+        synchronized (segment) {
+            segment.put(ip, entry);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        long hits = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    public long getMissCount() {
+        long misses = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    public double getHitRatio() {
+        long hitCount = this.getHitCount();
+        long total = hitCount + this.getMissCount();
+        return total == 0 ? 0.0 : hitCount / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return "GeoIPCache[size=" + this.size() + ", hits=" + this.getHitCount() + ", misses=" + this.getMissCount() +
+                ", evictions=" + this.getEvictionCount() + ", hitRatio=" + this.getHitRatio() + "]";
+    }
+
+    private boolean isExpired(CachedCountry entry) {
+        return this.ttlNanos > 0 && System.nanoTime() - entry.createdAt > this.ttlNanos;
+    }
+
+    private Segment segmentFor(String ip) {
+        int hash = ip.hashCode();
+        hash ^= (hash >>> 16);
+        return this.segments[hash & (this.segments.length - 1)];
+    }
+
+    /**
+     * A cached country id, along with the time it was resolved.
+     */
+    private static class CachedCountry {
+
+        private final int countryId;
+
+        private final long createdAt;
+
+        private CachedCountry(int countryId, long createdAt) {
+            this.countryId = countryId;
+            this.createdAt = createdAt;
+        }
+
+    }
+
+    /**
+     * An access ordered map which drops its least recently used entry once it grows beyond its maximum size, along
+     * with the counts of its lookups, which are guarded by the lock of the segment.
+     */
+    private static class Segment extends LinkedHashMap<String, CachedCountry> {
+
+        private static final long serialVersionUID = 2406744541329874218L;
+
+        private final int maxSize;
+
+        private long hits;
+
+        private long misses;
+
+        private long evictions;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCountry> eldest) {
+            if (this.size() > this.maxSize) {
+                this.evictions++;
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
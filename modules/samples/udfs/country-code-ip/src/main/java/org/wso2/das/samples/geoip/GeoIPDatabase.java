@@ -0,0 +1,34 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+/**
+ * A GeoIP country database backend, which resolves IPv4 addresses to MaxMind country ids.
+ * <p/>
+ * Implementations must be safe to be used concurrently and should not allocate on lookups, since they sit on the hot
+ * path of the UDFs.
+ */
+public interface GeoIPDatabase {
+
+    /**
+     * Resolves the given IPv4 address, as an unsigned 32 bit number, to the database country id, where 0 represents
+     * an unknown country.
+     */
+    int getCountryId(long ipNum);
+
+}
@@ -0,0 +1,192 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+import com.maxmind.geoip.Country;
+import com.maxmind.geoip.LookupService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shared lookup of the legacy MaxMind GeoIP country database used by the geo IP UDFs.
+ * <p/>
+ * The database is loaded once per JVM, on first use, into the {@link GeoIPDatabase} backend selected with the
+ * {@link #BACKEND_PROPERTY} system property: {@link #BACKEND_MMAP} (default) walks the trie of the memory mapped
+ * database file, and {@link #BACKEND_RANGE_TABLE} flattens it into a primitive range table at startup. The resolved
+ * addresses are cached in a {@link GeoIPCache}, which is on by default with the memory mapped backend only. The range
+ * table lookup does not allocate, while a cache miss allocates an entry, and with a high number of distinct addresses
+ * evicts one on almost every call, so with that backend the cache has to be turned on explicitly, with the
+ * {@link GeoIPCache#CACHE_SIZE_PROPERTY} system property, e.g. for logs dominated by a few frequent clients. A single
+ * instance is safe to be used by all the concurrent Spark tasks of an executor.
+ */
+public final class GeoIPLookup {
+
+    /**
+     * System property which can be used to point the UDFs to a GeoIP database other than the sample one.
+     */
+    public static final String DB_FILE_PROPERTY = "geoip.db.file";
+
+    public static final String BACKEND_PROPERTY = "geoip.backend";
+
+    public static final String BACKEND_MMAP = "mmap";
+
+    public static final String BACKEND_RANGE_TABLE = "range";
+
+    public static final String UNKNOWN_COUNTRY_CODE = "--";
+
+    public static final String UNKNOWN_COUNTRY_NAME = "N/A";
+
+    private static volatile GeoIPLookup instance;
+
+    private final GeoIPDatabase database;
+
+    private final String[] countryCodes;
+
+    private final String[] countryNames;
+
+    private final GeoIPCache cache;
+
+    private GeoIPLookup(String dbFile, String backend) throws IOException {
+        MappedGeoIPDatabase mappedDatabase = new MappedGeoIPDatabase(dbFile);
+        this.countryCodes = new String[256];
+        this.countryNames = new String[256];
+        this.loadCountries(mappedDatabase, dbFile);
+        if (BACKEND_RANGE_TABLE.equals(backend)) {
+            this.database = RangeTableGeoIPDatabase.build(mappedDatabase);
+            this.cache = GeoIPCache.fromSystemProperties(0);
+        } else if (BACKEND_MMAP.equals(backend)) {
+            this.database = mappedDatabase;
+            this.cache = GeoIPCache.fromSystemProperties();
+        } else {
+            throw new IOException("Unknown GeoIP backend '" + backend + "', expected '" + BACKEND_MMAP + "' or '" +
+                    BACKEND_RANGE_TABLE + "'");
+        }
+    }
+
+    /**
+     * Returns the JVM wide lookup instance, loading the database on the first call.
+     *
+     * @return the shared lookup instance
+     * @throws IOException if the database file cannot be read
+     */
+    public static GeoIPLookup getInstance() throws IOException {
+        GeoIPLookup result = instance;
+        if (result == null) {
+            synchronized (GeoIPLookup.class) {
+                result = instance;
+                if (result == null) {
+                    result = new GeoIPLookup(getDatabaseFile(), System.getProperty(BACKEND_PROPERTY, BACKEND_MMAP));
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static String getDatabaseFile() {
+        String dbFile = System.getProperty(DB_FILE_PROPERTY);
+        if (dbFile == null || dbFile.isEmpty()) {
+            String dir = System.getProperty("user.dir");
+            dbFile = dir + File.separator + "samples" + File.separator + "httpd-logs" + File.separator + "resources"
+                    + File.separator + "GeoIP.dat";
+        }
+        return dbFile;
+    }
+
+    public String getCountryCode(String ip) {
+        return this.countryCodes[this.getCountryId(ip)];
+    }
+
+    public String getCountryName(String ip) {
+        return this.countryNames[this.getCountryId(ip)];
+    }
+
+    public String getCountryCode(int countryId) {
+        return this.countryCodes[countryId];
+    }
+
+    public String getCountryName(int countryId) {
+        return this.countryNames[countryId];
+    }
+
+    public GeoIPDatabase getDatabase() {
+        return this.database;
+    }
+
+    public GeoIPCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Resolves the given IP address literal to the database country id, where 0 represents an unknown country, as
+     * are host names and malformed addresses.
+     * Resolved addresses are kept in the executor wide cache, if it is on, so that the code and the name lookups of
+     * the same address, and the repeated lookups of frequent clients, do not hit the database again.
+     */
+    public int getCountryId(String ip) {
+        if (ip == null) {
+            return 0;
+        }
+        int countryId = this.cache.get(ip);
+        if (countryId == GeoIPCache.MISS) {
+            countryId = this.resolveCountryId(ip);
+            this.cache.put(ip, countryId);
+        }
+        return countryId;
+    }
+
+    private int resolveCountryId(String ip) {
+        long ipNum = IPAddressParser.toIPv4(ip);
+        if (ipNum == IPAddressParser.INVALID) {
+            return 0;
+        }
+        return this.database.getCountryId(ipNum);
+    }
+
+    /**
+     * The country code and name tables are not part of the database file, so they are taken from the MaxMind
+     * library once, by resolving a representative address of each country id found in the trie.
+     */
+    private void loadCountries(MappedGeoIPDatabase mappedDatabase, String dbFile) throws IOException {
+        final Map<Integer, Long> representatives = new TreeMap<>();
+        mappedDatabase.visit(new MappedGeoIPDatabase.LeafVisitor() {
+            @Override
+            public void leaf(long start, int depth, int countryId) {
+                if (!representatives.containsKey(countryId)) {
+                    representatives.put(countryId, start);
+                }
+            }
+        });
+        LookupService lookupService = new LookupService(dbFile, LookupService.GEOIP_STANDARD);
+        try {
+            for (Map.Entry<Integer, Long> entry : representatives.entrySet()) {
+                Country country = lookupService.getCountry(entry.getValue());
+                this.countryCodes[entry.getKey()] = country.getCode();
+                this.countryNames[entry.getKey()] = country.getName();
+            }
+        } finally {
+            lookupService.close();
+        }
+        this.countryCodes[0] = UNKNOWN_COUNTRY_CODE;
+        this.countryNames[0] = UNKNOWN_COUNTRY_NAME;
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+/**
+ * Allocation free parser of IPv4 and IPv6 address literals.
+ * <p/>
+ * Unlike {@link java.net.InetAddress#getByName(String)}, the parser only accepts address literals, so host names and
+ * malformed values are rejected on the first unexpected character and never reach the name resolution code paths.
+ */
+public final class IPAddressParser {
+
+    /**
+     * Value returned by the IPv4 parse methods for inputs which are not valid address literals.
+     */
+    public static final long INVALID = -1L;
+
+    /**
+     * The length of the longest IPv4 literal accepted by {@link java.net.InetAddress}.
+     */
+    public static final int MAX_IPV4_LENGTH = 15;
+
+    private static final ThreadLocal<long[]> IPV6_BUFFER = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private IPAddressParser() {
+    }
+
+    /**
+     * Resolves the given literal to an IPv4 address, accepting dotted quads and IPv4 mapped IPv6 addresses.
+     *
+     * @param ip the address literal
+     * @return the address as an unsigned 32 bit number, or {@link #INVALID}
+     */
+    public static long toIPv4(CharSequence ip) {
+        if (ip == null) {
+            return INVALID;
+        }
+        long ipNum = parseIPv4(ip, 0, ip.length());
+        if (ipNum != INVALID || !containsColon(ip)) {
+            return ipNum;
+        }
+        long[] ipv6 = IPV6_BUFFER.get();
+        if (parseIPv6(ip, ipv6) && ipv6[0] == 0 && (ipv6[1] >>> 32) == 0xFFFFL) {
+            return ipv6[1] & 0xFFFFFFFFL;
+        }
+        return INVALID;
+    }
+
+    /**
+     * Parses a dotted quad IPv4 literal. As with {@link java.net.InetAddress}, the octets are decimal, even with
+     * leading zeros, as long as the literal is no longer than {@link #MAX_IPV4_LENGTH} characters.
+     *
+     * @return the address as an unsigned 32 bit number, or {@link #INVALID}
+     */
+    public static long parseIPv4(CharSequence ip) {
+        return parseIPv4(ip, 0, ip.length());
+    }
+
+    /**
+     * Parses the dotted quad IPv4 literal in ip[start, end).
+     *
+     * @return the address as an unsigned 32 bit number, or {@link #INVALID}
+     */
+    public static long parseIPv4(CharSequence ip, int start, int end) {
+        if (end - start > MAX_IPV4_LENGTH) {
+            return INVALID;
+        }
+        long result = 0;
+        int octets = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > 255) {
+                    return INVALID;
+                }
+                digits++;
+            } else if (c == '.') {
+                if (digits == 0 || value > 255 || octets == 3) {
+                    return INVALID;
+                }
+                result = (result << 8) | value;
+                octets++;
+                value = 0;
+                digits = 0;
+            } else {
+                return INVALID;
+            }
+        }
+        if (digits == 0 || value > 255 || octets != 3) {
+            return INVALID;
+        }
+        return (result << 8) | value;
+    }
+
+    /**
+     * Parses an IPv6 literal, including the compressed "::" form and an embedded trailing dotted quad. As with
+     * {@link java.net.InetAddress}, a group may have leading zeros beyond four digits, and a trailing zone id, either a
+     * scope id or an interface name, is accepted, but not on an IPv4 mapped address. The zone id itself is ignored, and
+     * an interface name is not checked against the interfaces of the host.
+     *
+     * @param ip     the address literal
+     * @param result a two element array, which receives the high and the low 64 bits of the address
+     * @return true if the input is a valid IPv6 literal
+     */
+    public static boolean parseIPv6(CharSequence ip, long[] result) {
+        int end = ip.length();
+        for (int i = 0; i < end; i++) {
+            if (ip.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+        boolean zone = end < ip.length();
+        if (end < 2 || (zone && !isZoneId(ip, end + 1))) {
+            return false;
+        }
+        long high = 0;
+        long low = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int groups = 0;
+        int gap = -1;
+        int pos = 0;
+        if (ip.charAt(0) == ':') {
+            if (ip.charAt(1) != ':') {
+                return false;
+            }
+            gap = 0;
+            pos = 2;
+        }
+        while (pos < end) {
+            int start = pos;
+            int value = 0;
+            while (pos < end) {
+                int digit = hexDigit(ip.charAt(pos));
+                if (digit < 0) {
+                    break;
+                }
+                value = (value << 4) | digit;
+                if (value > 0xFFFF) {
+                    return false;
+                }
+                pos++;
+            }
+            if (pos < end && ip.charAt(pos) == '.') {
+                /* an embedded IPv4 address, which takes the last two groups */
+                long ipv4 = parseIPv4(ip, start, end);
+                if (ipv4 == INVALID || groups > 6) {
+                    return false;
+                }
+                if (gap < 0) {
+                    low |= ipv4;
+                } else {
+                    tailHigh = (tailHigh << 32) | (tailLow >>> 32);
+                    tailLow = (tailLow << 32) | ipv4;
+                }
+                groups += 2;
+                break;
+            }
+            if (pos == start || groups == 8) {
+                return false;
+            }
+            if (gap < 0) {
+                if (groups < 4) {
+                    high |= (long) value << (48 - 16 * groups);
+                } else {
+                    low |= (long) value << (48 - 16 * (groups - 4));
+                }
+            } else {
+                tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                tailLow = (tailLow << 16) | value;
+            }
+            groups++;
+            if (pos == end) {
+                break;
+            }
+            if (ip.charAt(pos) != ':' || ++pos == end) {
+                return false;
+            }
+            if (ip.charAt(pos) == ':') {
+                if (gap >= 0) {
+                    return false;
+                }
+                gap = groups;
+                pos++;
+            }
+        }
+        if (gap < 0 ? groups != 8 : groups > 7) {
+            return false;
+        }
+        high |= tailHigh;
+        low |= tailLow;
+        if (zone && high == 0 && (low >>> 32) == 0xFFFFL) {
+            return false;
+        }
+        result[0] = high;
+        result[1] = low;
+        return true;
+    }
+
+    /**
+     * Checks whether ip[start, length) is a valid zone id, that is a scope id which fits an int, or an interface name.
+     */
+    private static boolean isZoneId(CharSequence ip, int start) {
+        if (start == ip.length()) {
+            return false;
+        }
+        boolean numeric = true;
+        long scopeId = 0;
+        for (int i = start; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                scopeId = Math.min(scopeId * 10 + (c - '0'), Integer.MAX_VALUE + 1L);
+            } else if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '.' || c == '-' || c == '_') {
+                numeric = false;
+            } else {
+                return false;
+            }
+        }
+        return !numeric || scopeId <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the value of the given ASCII hexadecimal digit, or -1 for any other character, unlike
+     * {@link Character#digit(char, int)} which also takes the digits of the other Unicode scripts.
+     */
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean containsColon(CharSequence ip) {
+        for (int i = 0; i < ip.length(); i++) {
+            if (ip.charAt(i) == ':') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -17,29 +17,16 @@
 */
 package org.wso2.das.samples.geoip;
 
-
-import com.maxmind.geoip.Country;
-import com.maxmind.geoip.LookupService;
-
-import java.io.File;
 import java.io.IOException;
 
 public class IPCountryCodeUDF {
 
-    public String toCountryCode(String ip){
+    public String toCountryCode(String ip) {
         try {
-            String e = System.getProperty("file.separator");
-            String dir = System.getProperty("user.dir");
-            String dbfile = dir + File.separator + "samples" + File.separator + "httpd-logs" + File.separator + "resources"
-                    + File.separator + "GeoIP.dat";
-            LookupService cl = new LookupService(dbfile, 1);
-            Country country = cl.getCountry(ip);
-            String countryCode = country.getCode();
-            cl.close();
-            return countryCode;
+            return GeoIPLookup.getInstance().getCountryCode(ip);
         } catch (IOException exception) {
             exception.printStackTrace();
-           return null;
+            return null;
         }
     }
 }
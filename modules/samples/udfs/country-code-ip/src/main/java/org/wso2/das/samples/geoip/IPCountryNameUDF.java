@@ -17,24 +17,13 @@
 */
 package org.wso2.das.samples.geoip;
 
-import com.maxmind.geoip.Country;
-import com.maxmind.geoip.LookupService;
-
-import java.io.File;
 import java.io.IOException;
 
 public class IPCountryNameUDF {
 
     public String toCountryName(String ip) {
         try {
-            String dir = System.getProperty("user.dir");
-            String dbfile = dir + File.separator + "samples" + File.separator + "httpd-logs" + File.separator + "resources"
-                    + File.separator + "GeoIP.dat";
-            LookupService cl = new LookupService(dbfile, 1);
-            Country country = cl.getCountry(ip);
-            String countryName = country.getName();
-            cl.close();
-            return countryName;
+            return GeoIPLookup.getInstance().getCountryName(ip);
         } catch (IOException exception) {
             exception.printStackTrace();
             return null;
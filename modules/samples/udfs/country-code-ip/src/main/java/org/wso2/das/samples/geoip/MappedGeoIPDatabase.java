@@ -0,0 +1,120 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link GeoIPDatabase} which memory maps a legacy MaxMind GeoIP country database file and resolves addresses by
+ * walking its binary search trie.
+ * <p/>
+ * Lookups only do absolute reads on the mapped buffer, which do not touch the buffer position, so a single instance
+ * can be shared by all the concurrent Spark tasks of an executor without any locking.
+ */
+public class MappedGeoIPDatabase implements GeoIPDatabase {
+
+    private static final int COUNTRY_EDITION = 1;
+
+    private static final int COUNTRY_BEGIN = 16776960;
+
+    private static final int RECORD_LENGTH = 3;
+
+    private static final int STRUCTURE_INFO_MAX_SIZE = 20;
+
+    private final MappedByteBuffer db;
+
+    public MappedGeoIPDatabase(String dbFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(dbFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            this.db = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            file.close();
+        }
+        int databaseType = this.readDatabaseType();
+        if (databaseType != COUNTRY_EDITION) {
+            throw new IOException("Unsupported GeoIP database type '" + databaseType + "' in " + dbFile +
+                    ", only the country edition is supported");
+        }
+    }
+
+    @Override
+    public int getCountryId(long ipNum) {
+        int offset = 0;
+        for (int depth = 31; depth >= 0; depth--) {
+            int record = this.readRecord(offset, (int) ((ipNum >>> depth) & 1));
+            if (record >= COUNTRY_BEGIN) {
+                return record - COUNTRY_BEGIN;
+            }
+            offset = record;
+        }
+        return 0;
+    }
+
+    /**
+     * Walks the whole database trie in ascending address order, calling the visitor for every leaf.
+     */
+    public void visit(LeafVisitor visitor) {
+        this.visit(0, 31, 0L, visitor);
+    }
+
+    private void visit(int offset, int depth, long prefix, LeafVisitor visitor) {
+        for (int branch = 0; branch < 2; branch++) {
+            int record = this.readRecord(offset, branch);
+            long start = prefix | ((long) branch << depth);
+            if (record >= COUNTRY_BEGIN) {
+                visitor.leaf(start, depth, record - COUNTRY_BEGIN);
+            } else if (depth > 0) {
+                this.visit(record, depth - 1, start, visitor);
+            }
+        }
+    }
+
+    private int readRecord(int offset, int branch) {
+        int index = (2 * offset + branch) * RECORD_LENGTH;
+        return (this.db.get(index) & 0xFF) | ((this.db.get(index + 1) & 0xFF) << 8) |
+                ((this.db.get(index + 2) & 0xFF) << 16);
+    }
+
+    private int readDatabaseType() {
+        int pos = this.db.capacity() - 3;
+        for (int i = 0; i < STRUCTURE_INFO_MAX_SIZE && pos >= 0; i++, pos--) {
+            if (this.db.get(pos) == -1 && this.db.get(pos + 1) == -1 && this.db.get(pos + 2) == -1) {
+                if (pos + 3 >= this.db.capacity()) {
+                    break;
+                }
+                int type = this.db.get(pos + 3) & 0xFF;
+                return type >= 106 ? type - 105 : type;
+            }
+        }
+        return COUNTRY_EDITION;
+    }
+
+    /**
+     * Callback for walking the database trie, a leaf covers the addresses [start, start + 2^depth).
+     */
+    public interface LeafVisitor {
+
+        void leaf(long start, int depth, int countryId);
+
+    }
+
+}
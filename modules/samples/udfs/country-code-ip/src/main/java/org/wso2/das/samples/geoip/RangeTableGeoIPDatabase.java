@@ -0,0 +1,102 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+import java.util.Arrays;
+
+/**
+ * {@link GeoIPDatabase} which flattens the GeoIP trie into a sorted table of IPv4 ranges.
+ * <p/>
+ * The table is a primitive array of range start addresses and a parallel array of country ids, where each range ends
+ * where the next one starts. Adjacent ranges of the same country are merged, and lookups are a binary search over
+ * the start addresses without any allocation. The start addresses are stored with their sign bit flipped, so that the
+ * signed int comparison orders them as unsigned addresses.
+ */
+public class RangeTableGeoIPDatabase implements GeoIPDatabase {
+
+    private final int[] rangeStarts;
+
+    private final short[] countryIds;
+
+    private RangeTableGeoIPDatabase(int[] rangeStarts, short[] countryIds) {
+        this.rangeStarts = rangeStarts;
+        this.countryIds = countryIds;
+    }
+
+    /**
+     * Builds the range table from all the leaves of the given database trie.
+     */
+    public static RangeTableGeoIPDatabase build(MappedGeoIPDatabase database) {
+        RangeTableBuilder builder = new RangeTableBuilder();
+        database.visit(builder);
+        return new RangeTableGeoIPDatabase(Arrays.copyOf(builder.rangeStarts, builder.size),
+                Arrays.copyOf(builder.countryIds, builder.size));
+    }
+
+    @Override
+    public int getCountryId(long ipNum) {
+        int key = (int) ipNum ^ Integer.MIN_VALUE;
+        int low = 0;
+        int high = this.rangeStarts.length - 1;
+        if (high < 0 || key < this.rangeStarts[0]) {
+            return 0;
+        }
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (this.rangeStarts[mid] <= key) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return this.countryIds[low];
+    }
+
+    public int getRangeCount() {
+        return this.rangeStarts.length;
+    }
+
+    /**
+     * Collects the trie leaves, which are visited in ascending address order, merging the adjacent ones of the same
+     * country.
+     */
+    private static class RangeTableBuilder implements MappedGeoIPDatabase.LeafVisitor {
+
+        private int[] rangeStarts = new int[1024];
+
+        private short[] countryIds = new short[1024];
+
+        private int size;
+
+        @Override
+        public void leaf(long start, int depth, int countryId) {
+            if (this.size > 0 && this.countryIds[this.size - 1] == countryId) {
+                return;
+            }
+            if (this.size == this.rangeStarts.length) {
+                this.rangeStarts = Arrays.copyOf(this.rangeStarts, this.size * 2);
+                this.countryIds = Arrays.copyOf(this.countryIds, this.size * 2);
+            }
+            this.rangeStarts[this.size] = (int) start ^ Integer.MIN_VALUE;
+            this.countryIds[this.size] = (short) countryId;
+            this.size++;
+        }
+
+    }
+
+}
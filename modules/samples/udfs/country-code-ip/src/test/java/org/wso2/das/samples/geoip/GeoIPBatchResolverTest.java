@@ -0,0 +1,61 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link GeoIPBatchResolver} rejects the ranges and output arrays which do not fit a batch before resolving
+ * any of it, so that no lookup is needed.
+ */
+public class GeoIPBatchResolverTest {
+
+    private final GeoIPBatchResolver resolver = new GeoIPBatchResolver(null);
+
+    @DataProvider(name = "invalidRanges")
+    public Object[][] invalidRanges() {
+        return new Object[][]{
+                {-1, 2, 4}, {0, -1, 4}, {0, 5, 5}, {3, 2, 5}, {1, Integer.MAX_VALUE, 4}, {5, 0, 5},
+                /* the country ids are written to the positions of the addresses */
+                {0, 4, 3}, {2, 2, 3}
+        };
+    }
+
+    @Test(dataProvider = "invalidRanges", expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRange(int offset, int length, int countryIdsLength) {
+        this.resolver.resolve(new String[4], offset, length, new int[countryIdsLength]);
+    }
+
+    @Test
+    public void testEmptyRange() {
+        Assert.assertEquals(this.resolver.resolve(new String[4], 4, 0, new int[4]), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testShortCountryCodes() {
+        this.resolver.resolve(new String[4], new String[3], new String[4]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testShortCountryNames() {
+        this.resolver.resolve(new String[4], new String[4], new String[3]);
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+*  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.das.samples.geoip;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * Compares {@link IPAddressParser} with {@link InetAddress#getByName(String)} on valid and invalid address literals.
+ * <p/>
+ * Literals containing a colon are always parsed as IPv6 literals by {@link InetAddress}, so they are compared with it
+ * whether they are valid or not. Other invalid literals would be resolved as host names, and the legacy forms of
+ * IPv4 literals, such as "1.2.3", are deliberately rejected by the parser, so those are only expected to be invalid.
+ * Interface name zone ids depend on the host, and octets with leading zeros on the Java version, so neither is part of
+ * the literals.
+ */
+public class IPAddressParserTest {
+
+    @DataProvider(name = "ipv6Literals")
+    public Object[][] ipv6Literals() {
+        return new Object[][]{
+                /* the position of "::" */
+                {"::"}, {"::1"}, {"1::"}, {"1::8"}, {"1:2:3::7:8"}, {"::2:3:4:5:6:7:8"}, {"1:2:3:4:5:6:7::"},
+                {"1:2:3:4:5:6:7:8"}, {"1::2::3"}, {"1:::2"}, {":::"}, {"1:2:3:4:5:6:7:8::"}, {"::1:2:3:4:5:6:7:8"},
+                {"1:2:3:4:5:6:7"}, {"1:2:3:4:5:6:7:8:9"},
+                /* a leading or trailing single ":" */
+                {":"}, {":1::2"}, {"1::2:"}, {":1:2:3:4:5:6:7:8"}, {"1:2:3:4:5:6:7:8:"},
+                /* the group digits */
+                {"ABCD:ef01::"}, {"0000:0000::0001"}, {"12345::1"}, {"::12345"}, {"1:00000::"}, {"1:10000::"}, {"::g"},
+                /* embedded dotted quads */
+                {"::1.2.3.4"}, {"64:ff9b::1.2.3.4"}, {"1:2:3:4:5:6:1.2.3.4"}, {"1:2:3:4:5:6:7:1.2.3.4"},
+                {"::1.2.3"}, {"::1.2.3.256"}, {"::1.2.3.4.5"}, {"::1.2.3.4:5"}, {"1.2.3.4::"},
+                /* IPv4 mapped addresses */
+                {"::ffff:1.2.3.4"}, {"::FFFF:102:304"}, {"::ffff:0:1.2.3.4"}, {"0:0:0:0:0:ffff:1.2.3.4"},
+                {"::fffe:1.2.3.4"},
+                /* zone ids */
+                {"fe80::1%1"}, {"::1.2.3.4%1"}, {"::ffff:1.2.3.4%1"}, {"fe80::1%"}, {"fe80::1%1%2"},
+                {"fe80::1%1:2"}, {"fe80::1%2147483647"}, {"fe80::1%2147483648"}, {"1::2:%1"}, {"%1"}
+        };
+    }
+
+    @Test(dataProvider = "ipv6Literals")
+    public void testIPv6Literal(String literal) {
+        byte[] expected = getByName(literal);
+        long[] result = new long[2];
+        boolean valid = IPAddressParser.parseIPv6(literal, result);
+        Assert.assertEquals(valid, expected != null, literal);
+        if (valid) {
+            Assert.assertEquals(Arrays.toString(toBytes(result)), Arrays.toString(toIPv6(expected)), literal);
+        }
+        Assert.assertEquals(IPAddressParser.toIPv4(literal), expected != null && expected.length == 4 ?
+                toLong(expected) : IPAddressParser.INVALID, literal);
+    }
+
+    /**
+     * Literals with the non-ASCII digits which {@link Character#digit(char, int)} takes, i.e. fullwidth and
+     * Arabic-Indic ones, all of which {@link InetAddress} rejects.
+     */
+    @DataProvider(name = "nonAsciiDigitLiterals")
+    public Object[][] nonAsciiDigitLiterals() {
+        String fullwidthOne = String.valueOf((char) 0xFF11);
+        String fullwidthA = String.valueOf((char) 0xFF41);
+        String arabicIndicOne = String.valueOf((char) 0x0661);
+        return new Object[][]{
+                {"::" + fullwidthOne}, {fullwidthOne + "::"}, {"::" + fullwidthA}, {"1:" + arabicIndicOne + "::"},
+                {"::1.2.3." + arabicIndicOne}, {"1.2.3." + fullwidthOne}, {fullwidthOne + ".2.3.4"},
+                {"fe80::1%" + fullwidthOne}
+        };
+    }
+
+    @Test(dataProvider = "nonAsciiDigitLiterals")
+    public void testNonAsciiDigitLiteral(String literal) {
+        Assert.assertNull(getByName(literal), literal);
+        long[] result = new long[2];
+        Assert.assertFalse(IPAddressParser.parseIPv6(literal, result), literal);
+        Assert.assertEquals(IPAddressParser.toIPv4(literal), IPAddressParser.INVALID, literal);
+    }
+
+    @DataProvider(name = "ipv4Literals")
+    public Object[][] ipv4Literals() {
+        return new Object[][]{
+                {"0.0.0.0", true}, {"1.2.3.4", true}, {"255.255.255.255", true}, {"10.0.0.1", true},
+                {"", false}, {"1.2.3", false}, {"1.2.3.4.5", false}, {"1.2.3.256", false},
+                {"1..3.4", false}, {".1.2.3", false}, {"1.2.3.", false}, {"1.2.3.-4", false}, {"localhost", false}
+        };
+    }
+
+    @Test(dataProvider = "ipv4Literals")
+    public void testIPv4Literal(String literal, boolean valid) {
+        long expected = valid ? toLong(getByName(literal)) : IPAddressParser.INVALID;
+        Assert.assertEquals(IPAddressParser.parseIPv4(literal), expected, literal);
+        Assert.assertEquals(IPAddressParser.toIPv4(literal), expected, literal);
+    }
+
+    @Test
+    public void testNull() {
+        Assert.assertEquals(IPAddressParser.toIPv4(null), IPAddressParser.INVALID);
+    }
+
+    /**
+     * Returns the address of the given literal, four bytes long for the IPv4 and the IPv4 mapped addresses, or null
+     * if it is not a valid literal.
+     */
+    private static byte[] getByName(String literal) {
+        try {
+            InetAddress address = InetAddress.getByName(literal);
+            Assert.assertEquals(address instanceof Inet4Address, address.getAddress().length == 4);
+            return address.getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static byte[] toIPv6(byte[] address) {
+        if (address.length == 16) {
+            return address;
+        }
+        byte[] ipv6 = new byte[16];
+        ipv6[10] = (byte) 0xFF;
+        ipv6[11] = (byte) 0xFF;
+        System.arraycopy(address, 0, ipv6, 12, 4);
+        return ipv6;
+    }
+
+    private static byte[] toBytes(long[] ipv6) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (ipv6[0] >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (ipv6[1] >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    private static long toLong(byte[] address) {
+        long result = 0;
+        for (byte b : address) {
+            result = (result << 8) | (b & 0xFF);
+        }
+        return result;
+    }
+
+}